@@ -0,0 +1,49 @@
+package edu.upc.epsevg.prop.othello.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.upc.epsevg.prop.othello.utils.Heuristica;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+
+/**
+ * Benchmark de l'avaluació heurística i del càlcul complet del hash Zobrist (el que substitueix l'antic
+ * MiniMaxID.hashValue; durant la cerca el hash es manté de forma incremental). Cada operació és una posició del corpus.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+@OperationsPerInvocation(CorpusPosicions.POSICIONS)
+public class AvaluacioBench {
+
+    @Param({"obertura", "mig", "final"})
+    public String fase;
+
+    private final Heuristica H = new Heuristica();
+    private TaulerBits[] taulers;
+
+    /**
+     * Funció que prepara el corpus de la fase.
+     */
+    @Setup(Level.Trial)
+    public void prepara() {
+        taulers = CorpusPosicions.taulers(CorpusPosicions.genera(fase));
+    }
+
+    @Benchmark
+    public void fHeuristica(Blackhole bh) {
+        for (TaulerBits tb : taulers) bh.consume(H.fHeuristica(tb, tb.getTorn()));
+    }
+
+    @Benchmark
+    public void calculaHash(Blackhole bh) {
+        for (TaulerBits tb : taulers) bh.consume(TaulerBits.calculaHash(tb.getP1(), tb.getP2(), tb.isTornP1()));
+    }
+
+}
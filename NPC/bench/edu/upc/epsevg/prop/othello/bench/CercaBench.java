@@ -0,0 +1,67 @@
+package edu.upc.epsevg.prop.othello.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.upc.epsevg.prop.othello.utils.MiniMax;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+
+/**
+ * Benchmark de la cerca a profunditat fixa sobre totes les posicions del corpus.
+ * Cada invocació cerca totes les posicions del corpus i el resultat és per cerca. A més del temps per cerca, el
+ * comptador 'nodes' dona els nodes per segon. La taula de transposició es buida abans de cada cerca perquè cap
+ * cerca reaprofiti el que ha guardat l'anterior; és d'1 MB (prou per profunditat 6, amb els mateixos nodes que una
+ * de 16 MB), de manera que buidar-la costa unes 0,05 ms per les 0,3-0,6 ms d'una cerca a profunditat 4, mentre
+ * que buidar-ne una de 16 MB en costava 2-3. Aquest cost queda inclòs al temps mesurat.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+@OperationsPerInvocation(CorpusPosicions.POSICIONS)
+public class CercaBench {
+
+    private final static int MIDA_TAULA_MB = 1;
+
+    @Param({"obertura", "mig", "final"})
+    public String fase;
+
+    @Param({"4", "6"})
+    public int prof;
+
+    private MiniMax MM;
+    private TaulerBits[] taulers;
+
+    /**
+     * Comptador auxiliar amb els nodes explorats, que JMH reporta per segon.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Nodes {
+        public long nodes;
+    }
+
+    /**
+     * Funció que prepara el corpus de la fase i el cercador.
+     */
+    @Setup(Level.Trial)
+    public void prepara() {
+        taulers = CorpusPosicions.taulers(CorpusPosicions.genera(fase));
+        MM = new MiniMax(prof, MIDA_TAULA_MB);
+    }
+
+    @Benchmark
+    public void cercaProfunditatFixa(Nodes n, Blackhole bh) {
+        for (TaulerBits tb : taulers) {
+            MM.buidaTaula();
+            bh.consume(MM.miniMax(tb, tb.getTorn()));
+            n.nodes += MM.getNodesExplorats();
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package edu.upc.epsevg.prop.othello.bench;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+import edu.upc.epsevg.prop.othello.GameStatus;
+import edu.upc.epsevg.prop.othello.utils.GameStatusNPC;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+
+/**
+ * Classe que genera el conjunt fix de posicions sobre el que es fan els benchmarks.
+ * Les posicions s'obtenen jugant partides aleatòries des de la posició inicial amb una llavor fixa,
+ * per tant són sempre les mateixes i els resultats de diferents execucions són comparables.
+ * Totes les posicions tenen com a mínim un moviment pel jugador que té el torn.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public final class CorpusPosicions {
+
+    /** Nombre de posicions de cada fase. */
+    public final static int POSICIONS = 64;
+
+    private final static long LLAVOR = 0x4F7468656C6C6FL;
+
+    private CorpusPosicions() {
+    }
+
+    /**
+     * Funció que genera les posicions d'una fase de la partida.
+     * @param fase "obertura" (50 a 56 caselles buides), "mig" (28 a 36) o "final" (14 a 20).
+     * @return Vector de POSICIONS estats de joc.
+     */
+    public static GameStatusNPC[] genera(String fase) {
+
+        int min, max;
+        switch (fase) {
+            case "obertura": min = 50; max = 56; break;
+            case "mig":      min = 28; max = 36; break;
+            case "final":    min = 14; max = 20; break;
+            default: throw new IllegalArgumentException("Fase desconeguda: " + fase);
+        }
+
+        SplittableRandom R = new SplittableRandom(LLAVOR ^ fase.hashCode());
+        GameStatusNPC[] posicions = new GameStatusNPC[POSICIONS];
+        int n = 0;
+        while (n < POSICIONS) {
+            GameStatusNPC gs = juga(R, min + R.nextInt(max - min + 1));
+            if (gs != null) posicions[n++] = gs;
+        }
+
+        return posicions;
+    }
+
+    /**
+     * Funció que converteix un vector d'estats de joc a taulers de bits.
+     * @param posicions Estats de joc.
+     * @return Taulers de bits equivalents.
+     */
+    public static TaulerBits[] taulers(GameStatus[] posicions) {
+
+        TaulerBits[] taulers = new TaulerBits[posicions.length];
+        for (int i = 0; i < posicions.length; i++)
+            taulers[i] = new TaulerBits(new GameStatusNPC(posicions[i]));
+
+        return taulers;
+    }
+
+    /**
+     * Funció que juga moviments aleatoris des de la posició inicial fins a deixar 'buides' caselles buides.
+     * @param R Generador aleatori.
+     * @param buides Nombre de caselles buides de la posició que es vol.
+     * @return Estat de joc, o null si la partida s'acaba abans o el jugador amb el torn no pot moure.
+     */
+    private static GameStatusNPC juga(SplittableRandom R, int buides) {
+
+        GameStatusNPC gs = new GameStatusNPC(new GameStatus());
+        while (64 - gs.getPiecesCount() > buides) {
+            ArrayList<Point> moviments = gs.getMoves();
+            if (moviments.isEmpty()) {
+                if (gs.checkGameOver()) return null;
+                gs.passaTorn();
+            }
+            else gs.movePiece(moviments.get(R.nextInt(moviments.size())));
+        }
+
+        return gs.getMoves().isEmpty() ? null : gs;
+    }
+
+}
@@ -0,0 +1,78 @@
+package edu.upc.epsevg.prop.othello.bench;
+
+import java.awt.Point;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import edu.upc.epsevg.prop.othello.utils.GameStatusNPC;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+
+/**
+ * Benchmark de la generació i aplicació de moviments: el camí de GameStatus (getMoves/movePiece amb còpia)
+ * contra el del tauler de bits (moviments i fes/desfés). Cada operació és una posició del corpus.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+AlwaysPreTouch"})
+@OperationsPerInvocation(CorpusPosicions.POSICIONS)
+public class GeneracioMovimentsBench {
+
+    @Param({"obertura", "mig", "final"})
+    public String fase;
+
+    private GameStatusNPC[] estats;
+    private TaulerBits[] taulers;
+    private Point[] primers;
+    private int[] primersBit;
+
+    /**
+     * Funció que prepara el corpus de la fase i el primer moviment de cada posició.
+     */
+    @Setup(Level.Trial)
+    public void prepara() {
+
+        estats = CorpusPosicions.genera(fase);
+        taulers = CorpusPosicions.taulers(estats);
+        primers = new Point[estats.length];
+        primersBit = new int[estats.length];
+        for (int i = 0; i < estats.length; i++) {
+            primers[i] = estats[i].getMoves().get(0);
+            primersBit[i] = TaulerBits.casella(primers[i]);
+        }
+    }
+
+    @Benchmark
+    public void getMoves(Blackhole bh) {
+        for (GameStatusNPC gs : estats) bh.consume(gs.getMoves());
+    }
+
+    @Benchmark
+    public void movePiece(Blackhole bh) {
+        for (int i = 0; i < estats.length; i++) {
+            GameStatusNPC fill = new GameStatusNPC(estats[i]);
+            fill.movePiece(primers[i]);
+            bh.consume(fill);
+        }
+    }
+
+    @Benchmark
+    public void moviments(Blackhole bh) {
+        for (TaulerBits tb : taulers) bh.consume(tb.moviments());
+    }
+
+    @Benchmark
+    public void fesDesfesMoviment(Blackhole bh) {
+        for (int i = 0; i < taulers.length; i++) {
+            long girades = taulers[i].fesMoviment(primersBit[i]);
+            taulers[i].desfesMoviment(primersBit[i], girades);
+            bh.consume(girades);
+        }
+    }
+
+}
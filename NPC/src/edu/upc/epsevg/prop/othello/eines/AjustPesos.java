@@ -0,0 +1,222 @@
+package edu.upc.epsevg.prop.othello.eines;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+import edu.upc.epsevg.prop.othello.utils.AvaluacioPatrons;
+import edu.upc.epsevg.prop.othello.utils.Heuristica;
+
+/**
+ * Programa que ajusta els pesos de l'avaluació (patrons, mobilitat i frontera) a partir de partides jugades.
+ * Llegeix les partides en notació de transcripció (una per línia) o en format binari, les reprodueix i guarda cada posició amb
+ * prou caselles buides junt amb la diferència final de peces des del punt de vista del jugador que té el torn.
+ * Després minimitza l'error quadràtic entre l'avaluació i ESCALA vegades aquesta diferència amb descens de
+ * gradient: cada iteració calcula el gradient en paral·lel (un tros de les posicions per fil) i actualitza
+ * cada pes de patró amb la mitjana de l'error de les posicions on apareix. Escriu el fitxer binari que
+ * Heuristica carrega en iniciar-se (propietat npc.pesos o recurs pesos.bin).
+ * Ús: AjustPesos partides.txt pesos.bin [iteracions] [fils] [minBuides] [maxBuides]
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class AjustPesos {
+
+    /** Unitats d'avaluació per cada peça de diferència final. */
+    public final static int ESCALA = 16;
+
+    private final static double PAS = 0.1, MIN_APARICIONS = 4;
+
+    private long[] propies = new long[1 << 16], contraries = new long[1 << 16];
+    private byte[] diferencies = new byte[1 << 16];
+    private int n = 0;
+
+    private final double[] pesos = new double[AvaluacioPatrons.MIDA_PESOS];
+    private final int[] aparicions = new int[AvaluacioPatrons.MIDA_PESOS];
+    private double pesMobilitat = 0, pesFrontera = 0, escalaMobilitat = 1, escalaFrontera = 1;
+
+    /**
+     * Punt d'entrada del programa.
+     * @param args Fitxer de partides, fitxer de sortida, iteracions, fils i rang de caselles buides.
+     * @throws IOException Si no es poden llegir les partides o escriure els pesos.
+     * @throws InterruptedException Si s'interromp l'espera dels fils.
+     * @throws ExecutionException Si falla el càlcul d'algun fil.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+
+        if (args.length < 2) {
+            System.err.println("Ús: AjustPesos partides.txt pesos.bin [iteracions] [fils] [minBuides] [maxBuides]");
+            System.exit(2);
+        }
+        int iteracions = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+        int nFils      = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        int minBuides  = (args.length > 4) ? Integer.parseInt(args[4]) : 12;
+        int maxBuides  = (args.length > 5) ? Integer.parseInt(args[5]) : 56;
+
+        AjustPesos ajust = new AjustPesos();
+        int partides = ajust.llegeixPartides(args[0], minBuides, maxBuides);
+        System.out.printf("partides=%d posicions=%d%n", partides, ajust.n);
+        if (ajust.n == 0) System.exit(1);
+
+        ExecutorService fils = Executors.newFixedThreadPool(nFils);
+        try {
+            ajust.preparaEscales();
+            for (int it = 1; it <= iteracions; it++) {
+                double error = ajust.iteracio(fils, nFils);
+                if (it == 1 || it % 10 == 0 || it == iteracions)
+                    System.out.printf("iteracio=%d error=%.3f (en peces: %.3f)%n", it, error, Math.sqrt(error) / ESCALA);
+            }
+        } finally {
+            fils.shutdown();
+        }
+
+        try (OutputStream out = Files.newOutputStream(Paths.get(args[1]))) {
+            ajust.resultat().guarda(out);
+        }
+        System.out.println("pesos guardats a " + args[1]);
+    }
+
+    /**
+     * Funció que llegeix les partides (transcripcions o registre binari) i en guarda les posicions del rang de
+     * caselles buides. Les partides il·legals o no acabades s'ignoren.
+     * @param fitxer Fitxer de partides.
+     * @param minBuides Mínim de caselles buides de les posicions que es guarden.
+     * @param maxBuides Màxim de caselles buides de les posicions que es guarden.
+     * @return Nombre de partides vàlides.
+     * @throws IOException Si no es pot llegir el fitxer.
+     */
+    private int llegeixPartides(String fitxer, int minBuides, int maxBuides) throws IOException {
+
+        return Transcripcio.llegeixPartides(Paths.get(fitxer), (moviments, nMoviments) -> {
+            TaulerBits tb = TaulerBits.inicial();
+            int inici = n;
+            for (int k = 0; k < nMoviments; k++) {
+                if (tb.moviments() == 0) tb.passa();
+                int buides = tb.buides();
+                if (buides >= minBuides && buides <= maxBuides) afegeix(tb.propies(), tb.contraries(), tb.isTornP1() ? 1 : -1);
+                tb.fesMoviment(moviments[k]);
+            }
+            if (!tb.finalPartida()) { n = inici; return false; }
+
+            int diferencia = Long.bitCount(tb.getP1()) - Long.bitCount(tb.getP2());
+            for (int k = inici; k < n; k++) diferencies[k] = (byte) (diferencies[k] * diferencia);
+            return true;
+        });
+    }
+
+    /**
+     * Funció que afegeix una posició, de moment amb el signe del jugador que té el torn com a diferència.
+     * @param p Bitboard del jugador que té el torn.
+     * @param o Bitboard del contrari.
+     * @param signe 1 si té el torn el jugador 1, -1 si no.
+     */
+    private void afegeix(long p, long o, int signe) {
+
+        if (n == propies.length) {
+            propies = Arrays.copyOf(propies, 2 * n);
+            contraries = Arrays.copyOf(contraries, 2 * n);
+            diferencies = Arrays.copyOf(diferencies, 2 * n);
+        }
+        propies[n] = p;
+        contraries[n] = o;
+        diferencies[n] = (byte) signe;
+        n++;
+    }
+
+    /**
+     * Funció que compta quantes vegades apareix cada pes de patró i la mitjana del quadrat de la mobilitat
+     * i la frontera, que fan de denominador del pas de cada pes.
+     */
+    private void preparaEscales() {
+
+        int[] index = new int[AvaluacioPatrons.NUM_PATRONS];
+        double mobilitat = 0, frontera = 0;
+        for (int k = 0; k < n; k++) {
+            AvaluacioPatrons.indexos(propies[k], contraries[k], index);
+            for (int i : index) aparicions[i]++;
+            int m = Heuristica.mobilitat(propies[k], contraries[k]), f = Heuristica.frontera(propies[k], contraries[k]);
+            mobilitat += m * m;
+            frontera += f * f;
+        }
+        escalaMobilitat = Math.max(1, mobilitat / n);
+        escalaFrontera = Math.max(1, frontera / n);
+    }
+
+    /**
+     * Funció que fa una iteració de descens de gradient.
+     * @param fils Fils que calculen el gradient.
+     * @param nFils Nombre de trossos en que es reparteixen les posicions.
+     * @return Error quadràtic mitjà abans d'actualitzar els pesos.
+     * @throws InterruptedException Si s'interromp l'espera dels fils.
+     * @throws ExecutionException Si falla el càlcul d'algun fil.
+     */
+    private double iteracio(ExecutorService fils, int nFils) throws InterruptedException, ExecutionException {
+
+        ArrayList<Future<double[]>> parcials = new ArrayList<>();
+        for (int t = 0; t < nFils; t++) {
+            int desde = (int) ((long) n * t / nFils), fins = (int) ((long) n * (t + 1) / nFils);
+            parcials.add(fils.submit(() -> gradient(desde, fins)));
+        }
+
+        double[] total = new double[AvaluacioPatrons.MIDA_PESOS + 3];
+        for (Future<double[]> parcial : parcials) {
+            double[] g = parcial.get();
+            for (int i = 0; i < total.length; i++) total[i] += g[i];
+        }
+
+        for (int i = 0; i < pesos.length; i++)
+            if (aparicions[i] >= MIN_APARICIONS) pesos[i] -= PAS * total[i] / aparicions[i];
+        pesMobilitat -= PAS * total[pesos.length] / (n * escalaMobilitat);
+        pesFrontera  -= PAS * total[pesos.length + 1] / (n * escalaFrontera);
+
+        return total[pesos.length + 2] / n;
+    }
+
+    /**
+     * Funció que calcula el gradient de l'error sobre un tros de les posicions.
+     * @param desde Primera posició (inclosa).
+     * @param fins Darrera posició (exclosa).
+     * @return Vector amb el gradient de cada pes de patró, el de mobilitat, el de frontera i la suma d'errors al quadrat.
+     */
+    private double[] gradient(int desde, int fins) {
+
+        double[] g = new double[AvaluacioPatrons.MIDA_PESOS + 3];
+        int[] index = new int[AvaluacioPatrons.NUM_PATRONS];
+        for (int k = desde; k < fins; k++) {
+            AvaluacioPatrons.indexos(propies[k], contraries[k], index);
+            int m = Heuristica.mobilitat(propies[k], contraries[k]), f = Heuristica.frontera(propies[k], contraries[k]);
+
+            double valor = pesMobilitat * m + pesFrontera * f;
+            for (int i : index) valor += pesos[i] / 2;
+            double error = valor - ESCALA * diferencies[k];
+
+            for (int i : index) g[i] += error / 2;
+            g[pesos.length] += error * m;
+            g[pesos.length + 1] += error * f;
+            g[pesos.length + 2] += error * error;
+        }
+
+        return g;
+    }
+
+    /**
+     * Funció que construeix l'avaluador amb els pesos ajustats, arrodonits i limitats al rang d'un short.
+     * @return Avaluador de patrons.
+     */
+    private AvaluacioPatrons resultat() {
+
+        AvaluacioPatrons patrons = new AvaluacioPatrons();
+        for (int i = 0; i < pesos.length; i++)
+            patrons.setPes(i, (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(pesos[i]))));
+        patrons.setPesosMobilitat((int) Math.round(pesMobilitat), (int) Math.round(pesFrontera));
+
+        return patrons;
+    }
+
+}
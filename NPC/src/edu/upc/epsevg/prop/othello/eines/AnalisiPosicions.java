@@ -0,0 +1,188 @@
+package edu.upc.epsevg.prop.othello.eines;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+
+import edu.upc.epsevg.prop.othello.Move;
+import edu.upc.epsevg.prop.othello.utils.MiniMaxID;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+
+/**
+ * Programa i API per analitzar moltes posicions amb una cerca limitada per profunditat o per nodes, sense temps
+ * ni interfície gràfica. Cada línia d'entrada és una posició ("64 caràcters torn", com a Perft) o una partida en
+ * notació de transcripció, de la qual s'analitza la posició final. Les línies buides o que comencen per '#'
+ * es copien tal qual.
+ * Per cada posició s'escriu una línia separada per tabuladors: l'entrada, el millor moviment, el valor pel jugador
+ * que té el torn, la profunditat completada, els nodes, els mil·lisegons i la variant principal. Si no hi ha moviments
+ * el moviment és "pas" o "final", i si l'entrada no és vàlida s'escriu "ERROR".
+ * Les posicions es reparteixen entre els fils, cadascun amb el seu cercador, i la sortida manté l'ordre de l'entrada.
+ * El cercador es reinicia abans de cada posició, de manera que el resultat d'una posició no depèn de les que s'han
+ * analitzat abans ni del nombre de fils (només els mil·lisegons canvien d'una execució a una altra).
+ * Les posicions amb com a molt B caselles buides (-final B) es resolen de forma exacta. Per defecte B és 20 si
+ * hi ha límit de nodes, que també limita la resolució, i el mínim entre 20 i la profunditat si només n'hi ha de
+ * profunditat, perquè la resolució no cerqui més avall del que s'ha demanat.
+ * Ús: AnalisiPosicions entrada|- sortida|- [-prof N] [-nodes N] [-final B] [-fils K] [-taula MB]
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class AnalisiPosicions {
+
+    private final static int MAX_VARIANT = 16, PENDENTS_PER_FIL = 4, LLINDAR_FINAL = 20;
+
+    /** Llindar de final que indica que es tria segons els límits. */
+    public final static int FINAL_PER_DEFECTE = -1;
+
+    private final MiniMaxID MM;
+
+    /**
+     * Constructora de la classe. Cal algun dels dos límits, perquè la cerca no té límit de temps.
+     * @param profunditat Profunditat màxima de la cerca (0 sense límit).
+     * @param nodes Nombre màxim de nodes per posició (0 sense límit).
+     * @param llindarFinal Caselles buides a partir de les quals es resol el final exactament (0 mai), o FINAL_PER_DEFECTE.
+     * @param midaTaulaMB Mida de la taula de transposició en MB.
+     */
+    public AnalisiPosicions(int profunditat, long nodes, int llindarFinal, int midaTaulaMB) {
+
+        if (profunditat <= 0 && nodes <= 0)
+            throw new IllegalArgumentException("Cal un límit de profunditat o de nodes");
+        if (llindarFinal == FINAL_PER_DEFECTE) llindarFinal = (nodes > 0) ? LLINDAR_FINAL : Math.min(LLINDAR_FINAL, profunditat);
+        MM = new MiniMaxID(midaTaulaMB, 1);
+        MM.setLimits(profunditat, nodes);
+        MM.setFinal(llindarFinal, false);
+    }
+
+    /**
+     * Funció que analitza una línia d'entrada i en retorna la línia de sortida. Abans de cercar es reinicia el
+     * cercador, perquè el resultat no depengui de les línies analitzades abans.
+     * @param linia Posició, transcripció, comentari o línia buida.
+     * @return Línia de sortida (sense salt de línia).
+     */
+    public String analitza(String linia) {
+
+        String entrada = linia.trim();
+        if (entrada.isEmpty() || entrada.startsWith("#")) return linia;
+
+        TaulerBits tb = llegeix(entrada);
+        if (tb == null) return entrada + "\tERROR";
+        if (tb.moviments() == 0) return entrada + "\t" + (tb.finalPartida() ? "final" : "pas");
+
+        MM.reinicia();
+        long inici = System.nanoTime();
+        Move moviment = MM.miniMaxID(tb, tb.getTorn());
+        long ms = (System.nanoTime() - inici) / 1_000_000L;
+        int casella = TaulerBits.casella(moviment.getTo());
+        int[] variant = MM.variantPrincipal(tb, casella, MAX_VARIANT);
+
+        return entrada + "\t" + Transcripcio.casella(casella) + "\t" + MM.getValor() + "\t" + MM.getProfunditat()
+                       + "\t" + moviment.getNumerOfNodesExplored() + "\t" + ms + "\t" + Transcripcio.escriu(variant, variant.length);
+    }
+
+    /**
+     * Funció que llegeix la posició d'una línia: "posició torn" o una transcripció.
+     * @param entrada Línia sense espais als extrems.
+     * @return Tauler de bits de la posició, o null si la línia no és vàlida.
+     */
+    private static TaulerBits llegeix(String entrada) {
+
+        String[] camps = entrada.split("\\s+");
+        if (camps.length == 2 && camps[0].length() == 64) return Transcripcio.llegeixPosicio(camps[0], camps[1]);
+
+        int[] moviments = Transcripcio.llegeix(entrada);
+        return (moviments != null) ? Transcripcio.reprodueix(moviments) : null;
+    }
+
+    /**
+     * Funció que analitza totes les línies d'entrada amb nFils fils i escriu els resultats en el mateix ordre.
+     * Només hi ha PENDENTS_PER_FIL línies per fil llegides i no escrites, de manera que es poden analitzar
+     * fitxers de qualsevol mida.
+     * @param in Entrada, una posició per línia.
+     * @param out Sortida.
+     * @param profunditat Profunditat màxima de la cerca (0 sense límit).
+     * @param nodes Nombre màxim de nodes per posició (0 sense límit).
+     * @param llindarFinal Caselles buides a partir de les quals es resol el final exactament, o FINAL_PER_DEFECTE.
+     * @param midaTaulaMB Mida de la taula de transposició de cada fil en MB.
+     * @param nFils Nombre de fils.
+     * @return Nombre de línies llegides.
+     * @throws IOException Si falla la lectura.
+     * @throws InterruptedException Si s'interromp l'espera dels fils.
+     * @throws ExecutionException Si falla alguna anàlisi.
+     */
+    public static long analitza(BufferedReader in, PrintWriter out, int profunditat, long nodes, int llindarFinal, int midaTaulaMB, int nFils)
+            throws IOException, InterruptedException, ExecutionException {
+
+        ThreadLocal<AnalisiPosicions> analitzadors = ThreadLocal.withInitial(() -> new AnalisiPosicions(profunditat, nodes, llindarFinal, midaTaulaMB));
+        ExecutorService fils = Executors.newFixedThreadPool(nFils, r -> {
+            Thread t = new Thread(r, "AnalisiPosicions"); t.setDaemon(true); return t;
+        });
+        ArrayDeque<Future<String>> pendents = new ArrayDeque<>();
+        long linies = 0;
+        try {
+            String linia;
+            while ((linia = in.readLine()) != null) {
+                String actual = linia;
+                pendents.add(fils.submit(() -> analitzadors.get().analitza(actual)));
+                linies++;
+                if (pendents.size() >= PENDENTS_PER_FIL * nFils) out.println(pendents.poll().get());
+            }
+            while (!pendents.isEmpty()) out.println(pendents.poll().get());
+            out.flush();
+        } finally {
+            fils.shutdownNow();
+        }
+
+        return linies;
+    }
+
+    /**
+     * Punt d'entrada del programa.
+     * @param args Fitxers d'entrada i sortida ("-" per l'entrada i la sortida estàndard) i opcions.
+     * @throws IOException Si no es pot llegir l'entrada o escriure la sortida.
+     * @throws InterruptedException Si s'interromp l'espera dels fils.
+     * @throws ExecutionException Si falla alguna anàlisi.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+
+        if (args.length < 2) {
+            System.err.println("Ús: AnalisiPosicions entrada|- sortida|- [-prof N] [-nodes N] [-final B] [-fils K] [-taula MB]");
+            System.exit(2);
+        }
+
+        int profunditat = 0, llindarFinal = FINAL_PER_DEFECTE, nFils = Runtime.getRuntime().availableProcessors(), midaTaulaMB = 16;
+        long nodes = 0;
+        for (int k = 2; k < args.length; k++) {
+            switch (args[k]) {
+                case "-prof":  profunditat = Integer.parseInt(args[++k]); break;
+                case "-nodes": nodes = Long.parseLong(args[++k]); break;
+                case "-final": llindarFinal = Integer.parseInt(args[++k]); break;
+                case "-fils":  nFils = Integer.parseInt(args[++k]); break;
+                case "-taula": midaTaulaMB = Integer.parseInt(args[++k]); break;
+                default: throw new IllegalArgumentException("Opció desconeguda: " + args[k]);
+            }
+        }
+        if (profunditat <= 0 && nodes <= 0) profunditat = 8;
+
+        long inici = System.nanoTime();
+        long linies;
+        try (BufferedReader in = args[0].equals("-")
+                    ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                    : Files.newBufferedReader(Paths.get(args[0]));
+             PrintWriter out = new PrintWriter(args[1].equals("-")
+                    ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                    : Files.newBufferedWriter(Paths.get(args[1])))) {
+            linies = analitza(in, out, profunditat, nodes, llindarFinal, midaTaulaMB, nFils);
+        }
+        System.err.printf("# linies=%d fils=%d temps=%.1fs%n", linies, nFils, (System.nanoTime() - inici) / 1e9);
+    }
+
+}
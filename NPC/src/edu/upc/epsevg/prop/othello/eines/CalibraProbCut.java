@@ -0,0 +1,190 @@
+package edu.upc.epsevg.prop.othello.eines;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.ArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+
+import edu.upc.epsevg.prop.othello.utils.ProbCut;
+import edu.upc.epsevg.prop.othello.utils.MiniMax;
+import edu.upc.epsevg.prop.othello.utils.MiniMaxID;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+
+/**
+ * Programa que calibra els paràmetres de Multi-ProbCut a partir d'un fitxer de partides. De cada partida tria
+ * posicions de mig joc a l'atzar (amb una llavor fixa), les cerca a totes les profunditats de 1 a la màxima i, per
+ * cada parella de profunditats (d, dc) i tram de caselles buides, ajusta per mínims quadrats la recta
+ * v(d) = a*v(dc) + b i la desviació típica de l'error. Els valors són des del punt de vista del jugador que té el
+ * torn i les cerques no resolen el final, com les del joc fora de la zona de final exacte. El cercador de cada fil es
+ * reinicia abans de cada posició, de manera que els valors només depenen de la posició i la calibració és
+ * reproduïble (per a la mateixa llavor) amb qualsevol nombre de fils.
+ * El resultat es pot posar a src/.../utils/probcut.txt o indicar amb la propietat del sistema "npc.probcut".
+ * Ús: CalibraProbCut partides sortida|- [-posicions N] [-perPartida K] [-parells d:dc,...] [-fils K] [-taula MB] [-llavor S]
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class CalibraProbCut {
+
+    private final static String PARELLS_PER_DEFECTE = "3:1,4:2,5:1,5:3,6:2,7:3,8:4,9:3,9:5,10:4,10:6";
+    private final static int MIN_BUIDES = 21, MAX_BUIDES = 56, MIN_MOSTRES = 30;
+
+    /**
+     * Funció que tria les posicions de mig joc de les partides: fins a perPartida posicions diferents de cada
+     * partida, entre MIN_BUIDES i MAX_BUIDES caselles buides i amb moviments.
+     * @param fitxer Fitxer de partides (transcripcions o binari).
+     * @param maxPosicions Nombre màxim de posicions.
+     * @param perPartida Posicions per partida.
+     * @param llavor Llavor del generador aleatori.
+     * @return Posicions triades.
+     * @throws IOException Si no es pot llegir el fitxer.
+     */
+    private static List<TaulerBits> triaPosicions(String fitxer, int maxPosicions, int perPartida, long llavor) throws IOException {
+
+        List<TaulerBits> posicions = new ArrayList<>();
+        List<TaulerBits> candidates = new ArrayList<>();
+        Random R = new Random(llavor);
+        Transcripcio.llegeixPartides(Paths.get(fitxer), (moviments, n) -> {
+            if (posicions.size() >= maxPosicions) return false;
+            candidates.clear();
+            TaulerBits tb = TaulerBits.inicial();
+            for (int k = 0; k < n; k++) {
+                if (tb.moviments() == 0) tb.passa();
+                tb.fesMoviment(moviments[k]);
+                int buides = tb.buides();
+                if (buides >= MIN_BUIDES && buides <= MAX_BUIDES && tb.moviments() != 0) candidates.add(new TaulerBits(tb));
+            }
+            for (int k = 0; k < perPartida && !candidates.isEmpty() && posicions.size() < maxPosicions; k++)
+                posicions.add(candidates.remove(R.nextInt(candidates.size())));
+            return true;
+        });
+
+        return posicions;
+    }
+
+    /**
+     * Funció que cerca una posició a totes les profunditats de 1 a profMaxima, partint d'un cercador reiniciat.
+     * @param MM Cercador (sense final exacte ni ProbCut).
+     * @param tb Posició.
+     * @param profMaxima Profunditat màxima.
+     * @return Valor a cada profunditat (índex 1..profMaxima) pel jugador que té el torn.
+     */
+    private static int[] valors(MiniMaxID MM, TaulerBits tb, int profMaxima) {
+
+        int[] v = new int[profMaxima + 1];
+        MM.reinicia();
+        for (int d = 1; d <= profMaxima; d++) {
+            MM.setLimits(d, 0);
+            MM.miniMaxID(new TaulerBits(tb), tb.getTorn());
+            v[d] = MM.getValor();
+        }
+
+        return v;
+    }
+
+    /**
+     * Punt d'entrada del programa.
+     * @param args Fitxer de partides, fitxer de sortida ("-" per la sortida estàndard) i opcions.
+     * @throws IOException Si no es pot llegir l'entrada o escriure la sortida.
+     * @throws InterruptedException Si s'interromp l'espera dels fils.
+     * @throws ExecutionException Si falla alguna cerca.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+
+        if (args.length < 2) {
+            System.err.println("Ús: CalibraProbCut partides sortida|- [-posicions N] [-perPartida K] [-parells d:dc,...] [-fils K] [-taula MB] [-llavor S]");
+            System.exit(2);
+        }
+
+        int maxPosicions = 2000, perPartida = 2, nFils = Runtime.getRuntime().availableProcessors(), midaTaulaMB = 16;
+        long llavor = 1L;
+        String parells = PARELLS_PER_DEFECTE;
+        for (int k = 2; k < args.length; k++) {
+            switch (args[k]) {
+                case "-posicions":  maxPosicions = Integer.parseInt(args[++k]); break;
+                case "-perPartida": perPartida = Integer.parseInt(args[++k]); break;
+                case "-parells":    parells = args[++k]; break;
+                case "-fils":       nFils = Integer.parseInt(args[++k]); break;
+                case "-taula":      midaTaulaMB = Integer.parseInt(args[++k]); break;
+                case "-llavor":     llavor = Long.parseLong(args[++k]); break;
+                default: throw new IllegalArgumentException("Opció desconeguda: " + args[k]);
+            }
+        }
+
+        String[] camps = parells.split(",");
+        int[] D = new int[camps.length], DC = new int[camps.length];
+        int profMaxima = 0;
+        for (int p = 0; p < camps.length; p++) {
+            String[] dd = camps[p].split(":");
+            D[p] = Integer.parseInt(dd[0]); DC[p] = Integer.parseInt(dd[1]);
+            if (D[p] > ProbCut.MAX_PROF || DC[p] < 1 || DC[p] >= D[p]) throw new IllegalArgumentException("Parell no vàlid: " + camps[p]);
+            profMaxima = Math.max(profMaxima, D[p]);
+        }
+
+        long inici = System.nanoTime();
+        List<TaulerBits> posicions = triaPosicions(args[0], maxPosicions, perPartida, llavor);
+        System.err.printf("# posicions=%d profMaxima=%d fils=%d%n", posicions.size(), profMaxima, nFils);
+
+        int taula = midaTaulaMB, prof = profMaxima;
+        ThreadLocal<MiniMaxID> cercadors = ThreadLocal.withInitial(() -> {
+            MiniMaxID MM = new MiniMaxID(taula, 1);
+            MM.setFinal(0, false);
+            return MM;
+        });
+        ExecutorService fils = Executors.newFixedThreadPool(nFils, r -> {
+            Thread t = new Thread(r, "CalibraProbCut"); t.setDaemon(true); return t;
+        });
+
+        // Sumes per parell i tram: n, x, y, xx, xy, yy (x = v(dc), y = v(d)).
+        int trams = 64 / ProbCut.MIDA_TRAM + 1;
+        double[][][] S = new double[camps.length][trams][6];
+        try {
+            List<Future<int[]>> resultats = new ArrayList<>();
+            for (TaulerBits tb : posicions) resultats.add(fils.submit(() -> valors(cercadors.get(), tb, prof)));
+            for (int i = 0; i < resultats.size(); i++) {
+                int[] v = resultats.get(i).get();
+                int tram = posicions.get(i).buides() / ProbCut.MIDA_TRAM;
+                for (int p = 0; p < camps.length; p++) {
+                    double x = v[DC[p]], y = v[D[p]];
+                    if (Math.abs(x) >= MiniMax.VICTORIA || Math.abs(y) >= MiniMax.VICTORIA) continue;
+                    double[] s = S[p][tram];
+                    s[0]++; s[1] += x; s[2] += y; s[3] += x * x; s[4] += x * y; s[5] += y * y;
+                }
+                if ((i + 1) % 100 == 0) System.err.printf("# %d/%d %.0fs%n", i + 1, resultats.size(), (System.nanoTime() - inici) / 1e9);
+            }
+        } finally {
+            fils.shutdownNow();
+        }
+
+        ProbCut pc = new ProbCut();
+        for (int p = 0; p < camps.length; p++) {
+            for (int t = 0; t < trams; t++) {
+                double[] s = S[p][t];
+                double n = s[0];
+                if (n < MIN_MOSTRES) continue;
+                double sxx = s[3] - s[1] * s[1] / n, sxy = s[4] - s[1] * s[2] / n, syy = s[5] - s[2] * s[2] / n;
+                if (sxx <= 0) continue;
+                double a = sxy / sxx, b = (s[2] - a * s[1]) / n;
+                double sigma = Math.sqrt(Math.max(0.0, (syy - a * sxy) / (n - 2)));
+                if (a > 0) pc.afegeix(D[p], DC[p], t, a, b, sigma, (int) n);
+            }
+        }
+
+        try (PrintWriter out = new PrintWriter(args[1].equals("-")
+                    ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                    : Files.newBufferedWriter(Paths.get(args[1])))) {
+            out.println("# CalibraProbCut " + args[0] + ": " + posicions.size() + " posicions, parells " + parells);
+            pc.escriu(out);
+        }
+        System.err.printf("# temps=%.1fs%n", (System.nanoTime() - inici) / 1e9);
+    }
+
+}
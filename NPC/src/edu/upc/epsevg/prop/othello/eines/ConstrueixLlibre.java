@@ -0,0 +1,255 @@
+package edu.upc.epsevg.prop.othello.eines;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.List;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+
+import edu.upc.epsevg.prop.othello.utils.MiniMax;
+import edu.upc.epsevg.prop.othello.utils.Simetries;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+import edu.upc.epsevg.prop.othello.utils.LlibreObertures;
+
+/**
+ * Programa que construeix el llibre d'obertures a partir de partides, en text o en format binari (per exemple,
+ * el registre d'un torneig d'autojoc). Reprodueix els primers moviments de cada partida acabada i compta, per
+ * cada posició en forma canònica, quantes vegades s'hi ha jugat cada moviment i la diferència final de peces mitjana.
+ * Només es guarden les posicions i els moviments que apareixen com a mínim minComptador vegades.
+ * Sense cerca, la puntuació de cada moviment és ESCALA vegades la diferència mitjana. Amb prof > 0, cada
+ * posició guardada es cerca a aquesta profunditat: s'hi afegeixen tots els moviments legals, puntuats amb la
+ * cerca, i els que no s'han jugat mai queden amb comptador 0. Al fitxer, els valors de la cerca es guarden amb
+ * LlibreObertures.codificaPuntuacio: els heurístics limitats al rang del short menys 64 valors a cada extrem, i els
+ * finals decidits (VICTORIA o DERROTA més la diferència de peces) en aquests extrems, amb la diferència. Cada execució puntua tot el llibre amb un sol dels dos criteris, així que les dues escales no es barregen.
+ * Ús: ConstrueixLlibre partides.txt llibre.bin [maxMoviments] [minComptador] [prof] [fils]
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class ConstrueixLlibre {
+
+    private final static int MIDA_TAULA_MB = 16;
+
+    /**
+     * Classe amb una posició del llibre (en forma canònica) i l'estadística de cada moviment.
+     */
+    private static class Posicio {
+
+        private final long p, o;
+        private final int[] comptadors = new int[64];
+        private final long[] diferencies = new long[64];
+        private final int[] puntuacions = new int[64];
+        private long moviments = 0L;
+
+        Posicio(long p, long o) {
+            this.p = p;
+            this.o = o;
+        }
+    }
+
+    private final Map<Long, Posicio> posicions = new HashMap<>();
+
+    /**
+     * Punt d'entrada del programa.
+     * @param args Fitxer de partides, fitxer del llibre, moviments, comptador mínim, profunditat i fils.
+     * @throws IOException Si no es poden llegir les partides o escriure el llibre.
+     * @throws InterruptedException Si s'interromp l'espera dels fils.
+     * @throws ExecutionException Si falla alguna cerca.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+
+        if (args.length < 2) {
+            System.err.println("Ús: ConstrueixLlibre partides.txt llibre.bin [maxMoviments] [minComptador] [prof] [fils]");
+            System.exit(2);
+        }
+        int maxMoviments = (args.length > 2) ? Integer.parseInt(args[2]) : 16;
+        int minComptador = (args.length > 3) ? Integer.parseInt(args[3]) : 2;
+        int prof         = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+        int nFils        = (args.length > 5) ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors();
+
+        ConstrueixLlibre llibre = new ConstrueixLlibre();
+        int partides = llibre.llegeixPartides(args[0], maxMoviments);
+        List<Posicio> guardades = llibre.filtra(minComptador);
+        System.out.printf("partides=%d posicions=%d guardades=%d%n", partides, llibre.posicions.size(), guardades.size());
+
+        if (prof > 0) llibre.cerca(guardades, prof, nFils);
+        else          for (Posicio pos : guardades) puntuaEstadistica(pos);
+
+        int n = llibre.escriu(guardades, args[1]);
+        System.out.printf("registres=%d guardats a %s%n", n, args[1]);
+    }
+
+    /**
+     * Funció que llegeix les partides (transcripcions o registre binari) i n'acumula els primers moviments per
+     * posició canònica. Si la posició és simètrica, els moviments equivalents es compten com un de sol
+     * (Simetries.movimentCanonic). Les partides il·legals o no acabades s'ignoren.
+     * @param fitxer Fitxer de partides.
+     * @param maxMoviments Nombre de moviments de cada partida que es fan servir.
+     * @return Nombre de partides vàlides.
+     * @throws IOException Si no es pot llegir el fitxer.
+     */
+    private int llegeixPartides(String fitxer, int maxMoviments) throws IOException {
+
+        long[] p = new long[maxMoviments], o = new long[maxMoviments];
+        int[] jugats = new int[maxMoviments], signes = new int[maxMoviments];
+        return Transcripcio.llegeixPartides(Paths.get(fitxer), (moviments, nMoviments) -> {
+            TaulerBits tb = TaulerBits.inicial();
+            int k = 0;
+            for (int m = 0; m < nMoviments; m++) {
+                if (tb.moviments() == 0) tb.passa();
+                if (k < maxMoviments) {
+                    int s = Simetries.canonica(tb.propies(), tb.contraries());
+                    p[k] = Simetries.transforma(tb.propies(), s);
+                    o[k] = Simetries.transforma(tb.contraries(), s);
+                    jugats[k] = Simetries.movimentCanonic(p[k], o[k], Simetries.transformaCasella(moviments[m], s));
+                    signes[k] = tb.isTornP1() ? 1 : -1;
+                    k++;
+                }
+                tb.fesMoviment(moviments[m]);
+            }
+            if (!tb.finalPartida()) return false;
+
+            int diferencia = Long.bitCount(tb.getP1()) - Long.bitCount(tb.getP2());
+            for (int i = 0; i < k; i++) {
+                long clau = TaulerBits.calculaHash(p[i], o[i], true);
+                Posicio pos = posicions.get(clau);
+                if (pos == null) posicions.put(clau, pos = new Posicio(p[i], o[i]));
+                pos.comptadors[jugats[i]]++;
+                pos.diferencies[jugats[i]] += signes[i] * diferencia;
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Funció que es queda amb els moviments jugats com a mínim minComptador vegades i amb les posicions
+     * que en tenen algun.
+     * @param minComptador Nombre mínim de partides d'un moviment.
+     * @return Posicions que es guarden al llibre.
+     */
+    private List<Posicio> filtra(int minComptador) {
+
+        List<Posicio> guardades = new ArrayList<>();
+        for (Posicio pos : posicions.values()) {
+            for (int c = 0; c < 64; c++)
+                if (pos.comptadors[c] >= minComptador) pos.moviments |= 1L << c;
+            if (pos.moviments != 0) guardades.add(pos);
+        }
+
+        return guardades;
+    }
+
+    /**
+     * Funció que puntua els moviments d'una posició amb la diferència final mitjana de les partides.
+     * @param pos Posició.
+     */
+    private static void puntuaEstadistica(Posicio pos) {
+        for (long m = pos.moviments; m != 0; m &= m - 1) {
+            int c = Long.numberOfTrailingZeros(m);
+            pos.puntuacions[c] = (int) (AjustPesos.ESCALA * pos.diferencies[c] / pos.comptadors[c]);
+        }
+    }
+
+    /**
+     * Funció que puntua tots els moviments legals de cada posició amb una cerca a profunditat fixa,
+     * repartint les posicions entre els fils (cada fil amb el seu cercador).
+     * @param guardades Posicions del llibre.
+     * @param prof Profunditat de cerca des de la posició (els fills es cerquen a prof-1, com a mínim 1).
+     * @param nFils Nombre de fils.
+     * @throws InterruptedException Si s'interromp l'espera dels fils.
+     * @throws ExecutionException Si falla alguna cerca.
+     */
+    private void cerca(List<Posicio> guardades, int prof, int nFils) throws InterruptedException, ExecutionException {
+
+        ExecutorService fils = Executors.newFixedThreadPool(nFils);
+        try {
+            ArrayList<Future<?>> tasques = new ArrayList<>();
+            for (int t = 0; t < nFils; t++) {
+                int fil = t;
+                tasques.add(fils.submit(() -> {
+                    MiniMax MM = new MiniMax(Math.max(1, prof - 1), MIDA_TAULA_MB);
+                    for (int i = fil; i < guardades.size(); i += nFils) puntuaCerca(guardades.get(i), MM);
+                }));
+            }
+            for (Future<?> tasca : tasques) tasca.get();
+        } finally {
+            fils.shutdown();
+        }
+    }
+
+    /**
+     * Funció que puntua tots els moviments legals d'una posició amb el valor de la cerca del tauler fill,
+     * des del punt de vista del jugador que té el torn a la posició. Dels moviments equivalents per simetria
+     * només es guarda el representant, com a la lectura de les partides. Els fills que acaben la partida es puntuen a
+     * la mateixa escala que la cerca (MiniMax.valorFinal), perquè un final guanyat passi per davant de qualsevol
+     * valor heurístic i un de perdut quedi per darrere.
+     * @param pos Posició.
+     * @param MM Cercador a profunditat fixa.
+     */
+    private static void puntuaCerca(Posicio pos, MiniMax MM) {
+
+        TaulerBits tb = new TaulerBits(pos.p, pos.o, true);
+        pos.moviments = 0L;
+        for (long m = tb.moviments(); m != 0; m &= m - 1) {
+            int c = Long.numberOfTrailingZeros(m);
+            if (Simetries.movimentCanonic(pos.p, pos.o, c) == c) pos.moviments |= 1L << c;
+        }
+        for (long m = pos.moviments; m != 0; m &= m - 1) {
+            int c = Long.numberOfTrailingZeros(m);
+            TaulerBits fill = new TaulerBits(tb);
+            fill.fesMoviment(c);
+
+            int valor;
+            if (fill.finalPartida()) {
+                valor = MiniMax.valorFinal(Long.bitCount(fill.getP1()) - Long.bitCount(fill.getP2()));
+            } else if (fill.moviments() == 0) {
+                fill.passa();
+                MM.miniMax(fill, fill.getTorn());
+                valor = MM.getValor();
+            } else {
+                MM.miniMax(fill, fill.getTorn());
+                valor = -MM.getValor();
+            }
+            pos.puntuacions[c] = valor;
+        }
+    }
+
+    /**
+     * Funció que escriu els moviments de les posicions guardades al fitxer del llibre, ordenats per clau i moviment.
+     * @param guardades Posicions del llibre.
+     * @param fitxer Fitxer de sortida.
+     * @return Nombre de registres escrits.
+     * @throws IOException Si no es pot escriure el fitxer.
+     */
+    private int escriu(List<Posicio> guardades, String fitxer) throws IOException {
+
+        guardades.sort(Comparator.comparingLong(pos -> TaulerBits.calculaHash(pos.p, pos.o, true)));
+        int total = 0;
+        for (Posicio pos : guardades) total += Long.bitCount(pos.moviments);
+
+        long[] claus = new long[total];
+        int[] comptadors = new int[total];
+        short[] puntuacions = new short[total];
+        byte[] moviments = new byte[total];
+        int n = 0;
+        for (Posicio pos : guardades) {
+            long clau = TaulerBits.calculaHash(pos.p, pos.o, true);
+            for (long m = pos.moviments; m != 0; m &= m - 1) {
+                int c = Long.numberOfTrailingZeros(m);
+                claus[n] = clau;
+                comptadors[n] = pos.comptadors[c];
+                puntuacions[n] = LlibreObertures.codificaPuntuacio(pos.puntuacions[c]);
+                moviments[n] = (byte) c;
+                n++;
+            }
+        }
+        LlibreObertures.escriu(Paths.get(fitxer), claus, comptadors, puntuacions, moviments, n);
+
+        return n;
+    }
+
+}
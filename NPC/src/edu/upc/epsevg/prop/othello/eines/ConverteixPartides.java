@@ -0,0 +1,145 @@
+package edu.upc.epsevg.prop.othello.eines;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+import edu.upc.epsevg.prop.othello.utils.RegistreBinari;
+
+/**
+ * Programa que converteix partides i posicions entre el text i el format binari (RegistreBinari).
+ *   Per defecte: partides (transcripcions o binari) a partides en binari.
+ *   -text: partides a transcripcions, una per línia.
+ *   -posicions: partides a posicions en binari, totes les posicions en què algú ha tirat.
+ * Si l'entrada és un registre binari de posicions, s'escriuen en text ("64 caràcters torn"), el format que
+ * llegeixen Perft i AnalisiPosicions.
+ * Ús: ConverteixPartides entrada sortida [-text|-posicions]
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class ConverteixPartides {
+
+    /**
+     * Punt d'entrada del programa.
+     * @param args Fitxers d'entrada i sortida i l'opció de format.
+     * @throws IOException Si no es pot llegir l'entrada o escriure la sortida.
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.err.println("Ús: ConverteixPartides entrada sortida [-text|-posicions]");
+            System.exit(2);
+        }
+        Path entrada = Paths.get(args[0]), sortida = Paths.get(args[1]);
+        String format = (args.length > 2) ? args[2] : "";
+
+        long inici = System.nanoTime(), n;
+        if (esPosicions(entrada))             n = posicionsText(entrada, sortida);
+        else if (format.equals("-text"))      n = partidesText(entrada, sortida);
+        else if (format.equals("-posicions")) n = partidesPosicions(entrada, sortida);
+        else if (format.isEmpty())            n = partidesBinari(entrada, sortida);
+        else throw new IllegalArgumentException("Opció desconeguda: " + format);
+        System.out.printf("registres=%d temps=%.1fs%n", n, (System.nanoTime() - inici) / 1e9);
+    }
+
+    /**
+     * Funció que retorna si el fitxer és un registre binari de posicions.
+     * @param fitxer Fitxer d'entrada.
+     * @return Cert si és de posicions.
+     * @throws IOException Si no es pot llegir el fitxer.
+     */
+    private static boolean esPosicions(Path fitxer) throws IOException {
+
+        if (!RegistreBinari.esRegistre(fitxer)) return false;
+        try (RegistreBinari.Lector lector = new RegistreBinari.Lector(fitxer)) {
+            return lector.getTipus() == RegistreBinari.POSICIONS;
+        }
+    }
+
+    /**
+     * Funció que escriu les partides en format binari.
+     * @param entrada Fitxer de partides.
+     * @param sortida Fitxer de sortida.
+     * @return Nombre de partides.
+     * @throws IOException Si falla la lectura o l'escriptura.
+     */
+    private static long partidesBinari(Path entrada, Path sortida) throws IOException {
+
+        try (RegistreBinari.Escriptor escriptor = new RegistreBinari.Escriptor(sortida, RegistreBinari.PARTIDES)) {
+            return Transcripcio.llegeixPartides(entrada, (moviments, n) -> {
+                escriptor.escriuPartida(moviments, n);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Funció que escriu les partides en notació de transcripció.
+     * @param entrada Fitxer de partides.
+     * @param sortida Fitxer de sortida.
+     * @return Nombre de partides.
+     * @throws IOException Si falla la lectura o l'escriptura.
+     */
+    private static long partidesText(Path entrada, Path sortida) throws IOException {
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(sortida))) {
+            return Transcripcio.llegeixPartides(entrada, (moviments, n) -> {
+                out.println(Transcripcio.escriu(moviments, n));
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Funció que escriu en format binari cada posició de les partides abans de cada moviment.
+     * @param entrada Fitxer de partides.
+     * @param sortida Fitxer de sortida.
+     * @return Nombre de posicions.
+     * @throws IOException Si falla la lectura o l'escriptura.
+     */
+    private static long partidesPosicions(Path entrada, Path sortida) throws IOException {
+
+        TaulerBits tb = TaulerBits.inicial();
+        try (RegistreBinari.Escriptor escriptor = new RegistreBinari.Escriptor(sortida, RegistreBinari.POSICIONS)) {
+            Transcripcio.llegeixPartides(entrada, (moviments, n) -> {
+                tb.copia(TaulerBits.inicial());
+                for (int k = 0; k < n; k++) {
+                    if (tb.moviments() == 0) tb.passa();
+                    escriptor.escriuPosicio(tb);
+                    tb.fesMoviment(moviments[k]);
+                }
+                return true;
+            });
+            return escriptor.getNumRegistres();
+        }
+    }
+
+    /**
+     * Funció que escriu les posicions d'un registre binari en text.
+     * @param entrada Registre binari de posicions.
+     * @param sortida Fitxer de sortida.
+     * @return Nombre de posicions.
+     * @throws IOException Si falla la lectura o l'escriptura.
+     */
+    private static long posicionsText(Path entrada, Path sortida) throws IOException {
+
+        long n = 0;
+        char[] posicio = new char[64];
+        try (RegistreBinari.Lector lector = new RegistreBinari.Lector(entrada);
+             PrintWriter out = new PrintWriter(Files.newBufferedWriter(sortida))) {
+            while (lector.seguent()) {
+                long p1 = lector.getP1(), p2 = lector.getP2();
+                for (int c = 0; c < 64; c++)
+                    posicio[c] = ((p1 >>> c & 1) != 0) ? 'X' : ((p2 >>> c & 1) != 0) ? 'O' : '-';
+                out.print(posicio);
+                out.println(lector.isTornP1() ? " X" : " O");
+                n++;
+            }
+        }
+
+        return n;
+    }
+
+}
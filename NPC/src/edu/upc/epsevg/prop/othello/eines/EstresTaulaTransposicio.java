@@ -0,0 +1,104 @@
+package edu.upc.epsevg.prop.othello.eines;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.upc.epsevg.prop.othello.utils.TaulaTransposicio;
+
+/**
+ * Programa de prova de la taula de transposició compartida entre fils.
+ * Cada fil consulta i guarda claus aleatòries d'un rang petit (per forçar la contenció) amb unes dades
+ * que es poden deduir de la clau. Si alguna consulta retorna dades que no corresponen a la clau, la taula
+ * ha acceptat una entrada a mig escriure. També mesura les operacions per segon amb 1, 2, 4... N fils.
+ * Ús: EstresTaulaTransposicio [maxFils] [segonsPerProva] [midaMB]
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class EstresTaulaTransposicio {
+
+    private final static int CLAUS_DIFERENTS = 1 << 16;
+
+    /**
+     * Punt d'entrada del programa.
+     * @param args Nombre màxim de fils, segons per prova i mida de la taula en MB.
+     * @throws InterruptedException Si s'interromp l'espera dels fils.
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        int maxFils = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int segons  = (args.length > 1) ? Integer.parseInt(args[1]) : 2;
+        int midaMB  = (args.length > 2) ? Integer.parseInt(args[2]) : 1;
+
+        boolean correcte = true;
+        double base = 0;
+        for (int nFils = 1; nFils <= maxFils; nFils = (nFils == maxFils) ? nFils + 1 : Math.min(maxFils, nFils * 2)) {
+            TaulaTransposicio TT = new TaulaTransposicio(midaMB);
+            AtomicLong operacions = new AtomicLong(), encerts = new AtomicLong(), colisions = new AtomicLong(), errors = new AtomicLong();
+            long fi = System.nanoTime() + segons * 1_000_000_000L;
+
+            Thread[] fils = new Thread[nFils];
+            for (int k = 0; k < nFils; k++) {
+                long llavor = k;
+                fils[k] = new Thread(() -> prova(TT, fi, llavor, operacions, encerts, colisions, errors));
+                fils[k].start();
+            }
+            for (Thread fil : fils) fil.join();
+
+            double opsSeg = operacions.get() / (double) segons;
+            if (nFils == 1) base = opsSeg;
+            System.out.printf("fils=%d ops/s=%.0f escalat=%.2f encerts=%d colisions=%d errors=%d%n",
+                              nFils, opsSeg, opsSeg / base, encerts.get(), colisions.get(), errors.get());
+            correcte &= (errors.get() == 0);
+        }
+
+        System.out.println(correcte ? "OK" : "ERROR: s'han llegit entrades corruptes");
+        if (!correcte) System.exit(1);
+    }
+
+    /**
+     * Funció que executa cada fil de la prova fins a l'instant final.
+     * @param TT Taula compartida.
+     * @param fi Instant final (System.nanoTime).
+     * @param llavor Llavor del generador aleatori del fil.
+     * @param operacions Comptador total d'operacions.
+     * @param encerts Comptador de consultes que han trobat la clau.
+     * @param colisions Comptador de consultes que han trobat una altra clau.
+     * @param errors Comptador de consultes que han retornat dades incoherents.
+     */
+    private static void prova(TaulaTransposicio TT, long fi, long llavor,
+                              AtomicLong operacions, AtomicLong encerts, AtomicLong colisions, AtomicLong errors) {
+
+        SplittableRandom R = new SplittableRandom(llavor);
+        long ops = 0, enc = 0, col = 0, err = 0;
+        while ((ops & 0xFFF) != 0 || System.nanoTime() < fi) {
+            long clau = barreja(R.nextInt(CLAUS_DIFERENTS));
+            long dades = TT.consulta(clau);
+            if (dades != 0) {
+                enc++;
+                if (TaulaTransposicio.valor(dades) != (int) (clau >>> 32)
+                    || TaulaTransposicio.moviment(dades) != (int) (clau & 63)
+                    || TaulaTransposicio.profunditat(dades) != (int) ((clau >>> 8) & 0x3F)) err++;
+            } else {
+                if (TT.colisio(clau)) col++;
+                TT.guarda(clau, (int) ((clau >>> 8) & 0x3F), TaulaTransposicio.EXACTA, (int) (clau >>> 32), (int) (clau & 63));
+            }
+            ops++;
+        }
+        operacions.addAndGet(ops);
+        encerts.addAndGet(enc);
+        colisions.addAndGet(col);
+        errors.addAndGet(err);
+    }
+
+    /**
+     * Funció que converteix un enter en una clau de 64 bits ben distribuïda (SplitMix64).
+     * @param x Enter.
+     * @return Clau de 64 bits.
+     */
+    private static long barreja(long x) {
+        long z = x * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+}
@@ -0,0 +1,141 @@
+package edu.upc.epsevg.prop.othello.eines;
+
+import java.awt.Point;
+import java.util.ArrayList;
+
+import edu.upc.epsevg.prop.othello.GameStatus;
+import edu.upc.epsevg.prop.othello.utils.GameStatusNPC;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+
+/**
+ * Programa que compta les fulles de l'arbre de joc fins a una profunditat (perft) per validar el generador de moviments.
+ * Compta amb dos camins independents, el de GameStatus (getMoves i movePiece sobre còpies) i el del tauler de bits
+ * (moviments i fes/desfés sobre un sol tauler), i comprova que coincideixen entre ells i, des de la posició inicial,
+ * amb els valors coneguts. Un pas compta com un moviment; una partida acabada abans de la profunditat compta com una fulla.
+ * Ús: Perft [profunditat] [posició torn] [-bits]
+ *   posició: 64 caràcters ('X' jugador 1, 'O' jugador 2, '-' buida) en l'ordre dels bits (casella i + j*8).
+ *   torn: X o O.
+ *   -bits: només el camí del tauler de bits (per profunditats on GameStatus és massa lent).
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class Perft {
+
+    private final static long CONEGUTS[] = {1L, 4L, 12L, 56L, 244L, 1396L, 8200L, 55092L, 390216L, 3005288L, 24571284L};
+
+    /**
+     * Punt d'entrada del programa.
+     * @param args Profunditat, posició i torn opcionals, i l'opció -bits.
+     */
+    public static void main(String[] args) {
+
+        int profunditat = 9;
+        boolean nomesBits = false, inicial = true;
+        TaulerBits tb = new TaulerBits(new GameStatusNPC(new GameStatus()));
+
+        for (int k = 0; k < args.length; k++) {
+            if (args[k].equals("-bits")) nomesBits = true;
+            else if (args[k].length() == 64 && k + 1 < args.length) {
+                tb = Transcripcio.llegeixPosicio(args[k], args[++k]);
+                inicial = false;
+                if (tb == null) {
+                    System.err.println("Torn no vàlid: " + args[k]);
+                    System.exit(2);
+                }
+            }
+            else profunditat = Integer.parseInt(args[k]);
+        }
+
+        boolean correcte = true;
+        for (int d = 1; d <= profunditat; d++) {
+            long inici = System.nanoTime();
+            long bits = perftBits(new TaulerBits(tb), d, false);
+            long tBits = System.nanoTime() - inici;
+            System.out.printf("prof=%2d bits=%,d (%.0f nodes/s)", d, bits, bits * 1e9 / Math.max(tBits, 1));
+
+            if (!nomesBits) {
+                inici = System.nanoTime();
+                long gs = perftGameStatus(new GameStatusNPC(tb), d, false);
+                long tGs = System.nanoTime() - inici;
+                System.out.printf(" gamestatus=%,d (%.0f nodes/s, x%.1f)", gs, gs * 1e9 / Math.max(tGs, 1), (double) tGs / Math.max(tBits, 1));
+                if (gs != bits) {
+                    System.out.print(" ERROR: els camins no coincideixen");
+                    correcte = false;
+                }
+            }
+
+            if (inicial && d < CONEGUTS.length) {
+                if (bits != CONEGUTS[d]) {
+                    System.out.printf(" ERROR: s'esperava %,d", CONEGUTS[d]);
+                    correcte = false;
+                }
+                else System.out.print(" OK");
+            }
+            System.out.println();
+        }
+
+        System.out.println(correcte ? "OK" : "ERROR");
+        if (!correcte) System.exit(1);
+    }
+
+    /**
+     * Funció que compta les fulles amb el tauler de bits, fent i desfent els moviments sobre el mateix tauler.
+     * @param tb Tauler de bits (es deixa igual que estava).
+     * @param prof Profunditat que queda.
+     * @param passat Cert si el moviment anterior ha estat un pas.
+     * @return Nombre de fulles.
+     */
+    public static long perftBits(TaulerBits tb, int prof, boolean passat) {
+
+        if (prof == 0) return 1;
+
+        long moviments = tb.moviments();
+        if (moviments == 0) {
+            if (passat) return 1;
+            tb.passa();
+            long n = perftBits(tb, prof - 1, true);
+            tb.passa();
+            return n;
+        }
+        if (prof == 1) return Long.bitCount(moviments);
+
+        long n = 0;
+        for (long m = moviments; m != 0; m &= m - 1) {
+            int moviment = Long.numberOfTrailingZeros(m);
+            long girades = tb.fesMoviment(moviment);
+            n += perftBits(tb, prof - 1, false);
+            tb.desfesMoviment(moviment, girades);
+        }
+
+        return n;
+    }
+
+    /**
+     * Funció que compta les fulles amb GameStatus, com feia la cerca original (una còpia per moviment).
+     * @param gs Estat de joc.
+     * @param prof Profunditat que queda.
+     * @param passat Cert si el moviment anterior ha estat un pas.
+     * @return Nombre de fulles.
+     */
+    public static long perftGameStatus(GameStatusNPC gs, int prof, boolean passat) {
+
+        if (prof == 0) return 1;
+
+        ArrayList<Point> moviments = gs.getMoves();
+        if (moviments.isEmpty()) {
+            if (passat) return 1;
+            GameStatusNPC fill = new GameStatusNPC(gs);
+            fill.passaTorn();
+            return perftGameStatus(fill, prof - 1, true);
+        }
+
+        long n = 0;
+        for (Point moviment : moviments) {
+            GameStatusNPC fill = new GameStatusNPC(gs);
+            fill.movePiece(moviment);
+            n += perftGameStatus(fill, prof - 1, false);
+        }
+
+        return n;
+    }
+
+}
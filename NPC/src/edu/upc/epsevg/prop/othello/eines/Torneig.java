@@ -0,0 +1,471 @@
+package edu.upc.epsevg.prop.othello.eines;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.ArrayList;
+import java.lang.reflect.Constructor;
+import java.util.function.Supplier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ExecutorCompletionService;
+
+import edu.upc.epsevg.prop.othello.Move;
+import edu.upc.epsevg.prop.othello.IPlayer;
+import edu.upc.epsevg.prop.othello.CellType;
+import edu.upc.epsevg.prop.othello.GameStatus;
+import edu.upc.epsevg.prop.othello.players.npc.PlayerID;
+import edu.upc.epsevg.prop.othello.players.npc.PlayerMiniMax;
+import edu.upc.epsevg.prop.othello.utils.GameStatusNPC;
+import edu.upc.epsevg.prop.othello.utils.ProbCut;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+import edu.upc.epsevg.prop.othello.utils.RegistreBinari;
+import edu.upc.epsevg.prop.othello.utils.TipusCerca;
+
+/**
+ * Programa que juga un torneig entre dos jugadors sense interfície gràfica, amb diverses partides alhora.
+ * Cada obertura es juga dues vegades canviant els colors, i cada partida crea les seves pròpies instàncies
+ * dels jugadors. Després de cada partida escriu una línia de resultat, l'Elo estimat del jugador A respecte
+ * del B amb l'interval del 95% i, si s'ha demanat, la raó de versemblança del test SPRT, que atura el torneig
+ * quan arriba a un dels dos límits.
+ * Ús: Torneig jugadorA jugadorB [-partides N] [-fils K] [-obertures fitxer] [-profObertura P]
+ *             [-registre fitxer] [-binari fitxer] [-sprt elo0 elo1] [-alpha a] [-beta b]
+ *   jugador: id:segons[:fils[:ab|pvs[:pondera][:mpc[=llindar]][:prof=P][:nodes=N]]], minimax:profunditat
+ *            o classe:nom[:enter[:segons]]
+ *     classe: qualsevol IPlayer pel nom complet de la classe, creat amb la constructora d'un enter (si se'n dona)
+ *             o amb la constructora sense paràmetres; amb segons, rep el timeout després d'aquests segons.
+ *     pondera: pondera durant el torn del contrari; mpc: Multi-ProbCut amb els paràmetres de ProbCut.carregaPerDefecte.
+ *     prof/nodes: mode determinista, cada tirada fins a P de profunditat o N nodes sense tenir en compte el temps.
+ *   obertures: fitxer de transcripcions; per defecte, totes les posicions a profObertura (4) moviments de l'inicial.
+ *   registre: fitxer on s'escriu la transcripció de cada partida (el format que llegeix AjustPesos).
+ *   binari: fitxer on s'escriuen les partides en format binari (RegistreBinari), que també llegeix AjustPesos.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class Torneig {
+
+    private final static double Z_95 = 1.96;
+
+    /**
+     * Classe que descriu un jugador del torneig: com crear-ne instàncies i el temps per moviment.
+     */
+    private static class Participant {
+
+        private final String descripcio;
+        private final Supplier<IPlayer> crea;
+        private final long msPerMoviment;
+
+        Participant(String descripcio, Supplier<IPlayer> crea, long msPerMoviment) {
+            this.descripcio = descripcio;
+            this.crea = crea;
+            this.msPerMoviment = msPerMoviment;
+        }
+    }
+
+    /**
+     * Classe amb el resultat d'una partida.
+     */
+    private static class Resultat {
+
+        private final int partida, obertura;
+        private final boolean aNegres;
+        private final int pecesA, pecesB;
+        private final String transcripcio, incidencia;
+
+        Resultat(int partida, int obertura, boolean aNegres, int pecesA, int pecesB, String transcripcio, String incidencia) {
+            this.partida = partida;
+            this.obertura = obertura;
+            this.aNegres = aNegres;
+            this.pecesA = pecesA;
+            this.pecesB = pecesB;
+            this.transcripcio = transcripcio;
+            this.incidencia = incidencia;
+        }
+
+        /**
+         * Funció que retorna la puntuació del jugador A (1 victòria, 0.5 empat, 0 derrota).
+         * @return Puntuació del jugador A.
+         */
+        double punts() {
+            return (pecesA > pecesB) ? 1.0 : (pecesA < pecesB) ? 0.0 : 0.5;
+        }
+    }
+
+    private final ScheduledExecutorService rellotge = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Torneig-rellotge"); t.setDaemon(true); return t;
+    });
+
+    /**
+     * Punt d'entrada del programa.
+     * @param args Jugadors i opcions del torneig.
+     * @throws IOException Si no es poden llegir les obertures o escriure el registre.
+     * @throws InterruptedException Si s'interromp l'espera de les partides.
+     * @throws ExecutionException Si alguna partida falla.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+
+        if (args.length < 2) {
+            System.err.println("Ús: Torneig jugadorA jugadorB [-partides N] [-fils K] [-obertures fitxer] [-profObertura P]"
+                             + " [-registre fitxer] [-binari fitxer] [-sprt elo0 elo1] [-alpha a] [-beta b]");
+            System.exit(2);
+        }
+
+        Participant A = participant(args[0]), B = participant(args[1]);
+        int partides = 1000, nFils = Runtime.getRuntime().availableProcessors(), profObertura = 4;
+        String fitxerObertures = null, fitxerRegistre = null, fitxerBinari = null;
+        boolean sprt = false;
+        double elo0 = 0, elo1 = 10, alpha = 0.05, beta = 0.05;
+        for (int k = 2; k < args.length; k++) {
+            switch (args[k]) {
+                case "-partides":     partides = Integer.parseInt(args[++k]); break;
+                case "-fils":         nFils = Integer.parseInt(args[++k]); break;
+                case "-obertures":    fitxerObertures = args[++k]; break;
+                case "-profObertura": profObertura = Integer.parseInt(args[++k]); break;
+                case "-registre":     fitxerRegistre = args[++k]; break;
+                case "-binari":       fitxerBinari = args[++k]; break;
+                case "-sprt":         sprt = true; elo0 = Double.parseDouble(args[++k]); elo1 = Double.parseDouble(args[++k]); break;
+                case "-alpha":        alpha = Double.parseDouble(args[++k]); break;
+                case "-beta":         beta = Double.parseDouble(args[++k]); break;
+                default: throw new IllegalArgumentException("Opció desconeguda: " + args[k]);
+            }
+        }
+
+        List<int[]> obertures = (fitxerObertures != null) ? llegeixObertures(fitxerObertures) : generaObertures(profObertura);
+        System.out.printf("# A=%s B=%s partides=%d fils=%d obertures=%d%n", A.descripcio, B.descripcio, partides, nFils, obertures.size());
+
+        Torneig torneig = new Torneig();
+        ExecutorService fils = Executors.newFixedThreadPool(nFils, r -> {
+            Thread t = new Thread(r, "Torneig-partida"); t.setDaemon(true); return t;
+        });
+        ExecutorCompletionService<Resultat> acabades = new ExecutorCompletionService<>(fils);
+        for (int g = 0; g < partides; g++) {
+            int partida = g;
+            acabades.submit(() -> torneig.juga(partida, partida / 2 % obertures.size(), obertures.get(partida / 2 % obertures.size()),
+                                               (partida & 1) == 0, A, B));
+        }
+
+        double limitInferior = Math.log(beta / (1 - alpha)), limitSuperior = Math.log((1 - beta) / alpha);
+        int victories = 0, empats = 0, derrotes = 0;
+        try (PrintWriter registre = (fitxerRegistre != null) ? new PrintWriter(Files.newBufferedWriter(Paths.get(fitxerRegistre))) : null;
+             RegistreBinari.Escriptor binari = (fitxerBinari != null) ? new RegistreBinari.Escriptor(Paths.get(fitxerBinari), RegistreBinari.PARTIDES) : null) {
+            for (int g = 0; g < partides; g++) {
+                Resultat r = acabades.take().get();
+                if (r.punts() == 1.0)      victories++;
+                else if (r.punts() == 0.0) derrotes++;
+                else                       empats++;
+                if (registre != null) { registre.println(r.transcripcio); registre.flush(); }
+                if (binari != null) { int[] moviments = Transcripcio.llegeix(r.transcripcio); binari.escriuPartida(moviments, moviments.length); }
+
+                int n = victories + empats + derrotes;
+                double[] elo = elo(victories, empats, derrotes);
+                System.out.printf("partida=%d obertura=%d A=%s peces=%d-%d%s V/E/D=%d/%d/%d elo=%.1f [%.1f, %.1f]",
+                                  r.partida, r.obertura, r.aNegres ? "negres" : "blanques", r.pecesA, r.pecesB,
+                                  (r.incidencia != null) ? " (" + r.incidencia + ")" : "", victories, empats, derrotes, elo[0], elo[1], elo[2]);
+                if (sprt) {
+                    double llr = llr(victories, empats, derrotes, elo0, elo1);
+                    System.out.printf(" LLR=%.2f [%.2f, %.2f]", llr, limitInferior, limitSuperior);
+                    if (llr >= limitSuperior || llr <= limitInferior) {
+                        System.out.println();
+                        System.out.printf("# SPRT: s'accepta H%d (elo %s %.1f) després de %d partides%n",
+                                          llr >= limitSuperior ? 1 : 0, llr >= limitSuperior ? ">=" : "<=",
+                                          llr >= limitSuperior ? elo1 : elo0, n);
+                        break;
+                    }
+                }
+                System.out.println();
+            }
+        } finally {
+            fils.shutdownNow();
+        }
+    }
+
+    /**
+     * Funció que juga una partida entre noves instàncies dels dos participants des d'una obertura.
+     * Si un jugador no retorna cap moviment o en retorna un d'il·legal, perd la partida (0-64).
+     * @param partida Número de partida.
+     * @param iObertura Índex de l'obertura.
+     * @param obertura Moviments de l'obertura.
+     * @param aNegres Cert si el jugador A juga amb el jugador 1 (comença).
+     * @param A Participant A.
+     * @param B Participant B.
+     * @return Resultat de la partida.
+     */
+    private Resultat juga(int partida, int iObertura, int[] obertura, boolean aNegres, Participant A, Participant B) {
+
+        IPlayer jugadorA = A.crea.get(), jugadorB = B.crea.get();
+        GameStatusNPC gs = new GameStatusNPC(new GameStatus());
+        int[] moviments = new int[64];
+        int n = 0;
+        for (int moviment : obertura) {
+            if (gs.getMoves().isEmpty()) gs.passaTorn();
+            gs.movePiece(TaulerBits.punt(moviment));
+            moviments[n++] = moviment;
+        }
+
+        try {
+            String incidencia = null;
+            while (!gs.checkGameOver()) {
+                if (gs.getMoves().isEmpty()) { gs.passaTorn(); continue; }
+
+                boolean tornA = (gs.getCurrentPlayer() == CellType.PLAYER1) == aNegres;
+                IPlayer jugador = tornA ? jugadorA : jugadorB;
+                long ms = tornA ? A.msPerMoviment : B.msPerMoviment;
+
+                ScheduledFuture<?> avis = (ms > 0) ? rellotge.schedule(jugador::timeout, ms, TimeUnit.MILLISECONDS) : null;
+                Move m = jugador.move(new GameStatus(gs));
+                if (avis != null) avis.cancel(false);
+
+                Point p = (m != null) ? m.getTo() : null;
+                if (p == null || !gs.getMoves().contains(p)) {
+                    incidencia = (tornA ? "A" : "B") + " ha fet un moviment il·legal";
+                    return new Resultat(partida, iObertura, aNegres, tornA ? 0 : 64, tornA ? 64 : 0,
+                                        Transcripcio.escriu(moviments, n), incidencia);
+                }
+                gs.movePiece(p);
+                moviments[n++] = TaulerBits.casella(p);
+            }
+
+            int negres = gs.getPiecesCountP1(), blanques = gs.getPiecesCountP2();
+            return new Resultat(partida, iObertura, aNegres, aNegres ? negres : blanques, aNegres ? blanques : negres,
+                                Transcripcio.escriu(moviments, n), incidencia);
+        } finally {
+            tanca(jugadorA);
+            tanca(jugadorB);
+        }
+    }
+
+    /**
+     * Funció que tanca un jugador en acabar la partida, perquè no continuï ponderant en segon pla ni deixi
+     * oberts els fils dels ajudants (cada partida en crea de nous).
+     * @param jugador Jugador.
+     */
+    private static void tanca(IPlayer jugador) {
+        if (jugador instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) jugador).close();
+            } catch (Exception e) {
+                System.err.println("No s'ha pogut tancar el jugador (" + e.getMessage() + ")");
+            }
+        }
+    }
+
+    /**
+     * Funció que interpreta la descripció d'un jugador.
+     * @param descripcio id:segons[:fils[:ab|pvs[:pondera][:mpc[=llindar]][:prof=P][:nodes=N]]], minimax:profunditat
+     *                   o classe:nom[:enter[:segons]].
+     * @return Participant.
+     */
+    private static Participant participant(String descripcio) {
+
+        String[] parts = descripcio.split(":");
+        switch (parts[0]) {
+            case "id": {
+                int segons = Integer.parseInt(parts[1]);
+                int nFils = (parts.length > 2) ? Integer.parseInt(parts[2]) : 1;
+                if (parts.length > 3 && !parts[3].equals("ab") && !parts[3].equals("pvs"))
+                    throw new IllegalArgumentException("Tipus de cerca desconegut (ab o pvs): " + parts[3]);
+                TipusCerca tipus = (parts.length > 3 && parts[3].equals("pvs")) ? TipusCerca.PVS : TipusCerca.ALFA_BETA;
+                boolean pondera = false;
+                ProbCut mpc = null;
+                int profLimit = 0;
+                long nodesLimit = 0;
+                for (int k = 4; k < parts.length; k++) {
+                    if (parts[k].equals("pondera")) pondera = true;
+                    else if (parts[k].startsWith("mpc")) mpc = probCut(parts[k]);
+                    else if (parts[k].startsWith("prof=")) profLimit = Integer.parseInt(parts[k].substring(5));
+                    else if (parts[k].startsWith("nodes=")) nodesLimit = Long.parseLong(parts[k].substring(6));
+                    else throw new IllegalArgumentException("Opció de jugador desconeguda: " + parts[k]);
+                }
+                boolean ponderacio = pondera;
+                ProbCut probCut = mpc;
+                int profunditat = profLimit;
+                long nodes = nodesLimit;
+                return new Participant(descripcio, () -> {
+                    PlayerID jugador = new PlayerID(segons, nFils, tipus);
+                    jugador.setPonderacio(ponderacio);
+                    jugador.setProbCut(probCut);
+                    jugador.setDeterminista(profunditat, nodes);
+                    return jugador;
+                }, segons * 1000L);
+            }
+            case "minimax": {
+                int prof = Integer.parseInt(parts[1]);
+                return new Participant(descripcio, () -> new PlayerMiniMax(prof), 0L);
+            }
+            case "classe": {
+                if (parts.length < 2) throw new IllegalArgumentException("Falta el nom de la classe: " + descripcio);
+                Constructor<? extends IPlayer> constructora = constructora(parts[1], parts.length > 2);
+                Object[] arguments = (parts.length > 2) ? new Object[] { Integer.parseInt(parts[2]) } : new Object[0];
+                long ms = (parts.length > 3) ? Integer.parseInt(parts[3]) * 1000L : 0L;
+                return new Participant(descripcio, () -> {
+                    try {
+                        return constructora.newInstance(arguments);
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException("No s'ha pogut crear el jugador " + parts[1], e);
+                    }
+                }, ms);
+            }
+            default: throw new IllegalArgumentException("Jugador desconegut: " + descripcio);
+        }
+    }
+
+    /**
+     * Funció que busca la constructora d'un jugador donat pel nom complet de la classe, que ha d'implementar IPlayer.
+     * @param nom Nom complet de la classe.
+     * @param ambEnter Cert per la constructora d'un enter, fals per la constructora sense paràmetres.
+     * @return Constructora pública del jugador.
+     */
+    private static Constructor<? extends IPlayer> constructora(String nom, boolean ambEnter) {
+
+        try {
+            Class<? extends IPlayer> classe = Class.forName(nom).asSubclass(IPlayer.class);
+            return ambEnter ? classe.getConstructor(int.class) : classe.getConstructor();
+        } catch (ClassNotFoundException | NoSuchMethodException | ClassCastException e) {
+            throw new IllegalArgumentException("Jugador desconegut: " + nom + " (" + e.getMessage() + ")", e);
+        }
+    }
+
+    /**
+     * Funció que carrega els paràmetres de Multi-ProbCut d'una opció de jugador ("mpc" o "mpc=llindar").
+     * @param opcio Opció del jugador.
+     * @return Paràmetres de ProbCut.
+     */
+    private static ProbCut probCut(String opcio) {
+
+        ProbCut probCut = ProbCut.carregaPerDefecte();
+        if (probCut == null) throw new IllegalArgumentException("No hi ha paràmetres de ProbCut (probcut.txt o npc.probcut)");
+        if (opcio.equals("mpc")) return probCut;
+        if (!opcio.startsWith("mpc=")) throw new IllegalArgumentException("Opció de jugador desconeguda: " + opcio);
+
+        return probCut.ambLlindar(Double.parseDouble(opcio.substring(4)));
+    }
+
+    /**
+     * Funció que llegeix les obertures d'un fitxer de transcripcions (les línies buides o amb '#' s'ignoren).
+     * @param fitxer Fitxer d'obertures.
+     * @return Llista d'obertures.
+     * @throws IOException Si no es pot llegir el fitxer.
+     */
+    private static List<int[]> llegeixObertures(String fitxer) throws IOException {
+
+        List<int[]> obertures = new ArrayList<>();
+        for (String linia : Files.readAllLines(Paths.get(fitxer))) {
+            if (linia.isBlank() || linia.startsWith("#")) continue;
+            int[] obertura = Transcripcio.llegeix(linia);
+            if (obertura == null) throw new IOException("Obertura il·legal: " + linia);
+            obertures.add(obertura);
+        }
+
+        return obertures;
+    }
+
+    /**
+     * Funció que genera totes les seqüències de 'prof' moviments des de la posició inicial, en un ordre fix.
+     * A poca profunditat són posicions equilibrades i, jugades amb els dos colors, es compensen entre elles.
+     * @param prof Nombre de moviments de cada obertura.
+     * @return Llista d'obertures.
+     */
+    private static List<int[]> generaObertures(int prof) {
+
+        List<int[]> obertures = new ArrayList<>();
+        generaObertures(TaulerBits.inicial(), new int[prof], 0, obertures);
+
+        return obertures;
+    }
+
+    /**
+     * Funció recursiva de generaObertures.
+     * @param tb Tauler actual.
+     * @param seq Moviments fets fins ara.
+     * @param k Nombre de moviments fets.
+     * @param obertures Llista on s'afegeixen les obertures.
+     */
+    private static void generaObertures(TaulerBits tb, int[] seq, int k, List<int[]> obertures) {
+
+        if (k == seq.length) { obertures.add(seq.clone()); return; }
+        for (long m = tb.moviments(); m != 0; m &= m - 1) {
+            int moviment = Long.numberOfTrailingZeros(m);
+            long girades = tb.fesMoviment(moviment);
+            seq[k] = moviment;
+            generaObertures(tb, seq, k + 1, obertures);
+            tb.desfesMoviment(moviment, girades);
+        }
+    }
+
+    /**
+     * Funció que estima la diferència d'Elo del jugador A respecte del B i l'interval de confiança del 95%.
+     * @param v Victòries d'A.
+     * @param e Empats.
+     * @param d Derrotes d'A.
+     * @return Elo estimat, límit inferior i límit superior.
+     */
+    static double[] elo(int v, int e, int d) {
+
+        double[] m = moments(v, e, d);
+        double marge = Z_95 * Math.sqrt(m[1] / m[2]);
+
+        return new double[] {diferenciaElo(m[0]), diferenciaElo(m[0] - marge), diferenciaElo(m[0] + marge)};
+    }
+
+    /**
+     * Funció que calcula la raó de log-versemblança del test SPRT entre H0 (elo0) i H1 (elo1),
+     * amb l'aproximació normal del resultat per partida (victòria/empat/derrota).
+     * @param v Victòries d'A.
+     * @param e Empats.
+     * @param d Derrotes d'A.
+     * @param elo0 Diferència d'Elo de la hipòtesi nul·la.
+     * @param elo1 Diferència d'Elo de la hipòtesi alternativa.
+     * @return Raó de log-versemblança.
+     */
+    static double llr(int v, int e, int d, double elo0, double elo1) {
+
+        double[] m = moments(v, e, d);
+        double s0 = puntuacioEsperada(elo0), s1 = puntuacioEsperada(elo1);
+
+        return (s1 - s0) * (2 * m[0] - s0 - s1) * m[2] / (2 * m[1]);
+    }
+
+    /**
+     * Funció que calcula la mitjana i la variància de la puntuació per partida. Si algun dels tres resultats
+     * encara no ha sortit, s'afegeix mig resultat de cada tipus perquè la variància no sigui zero.
+     * @param v Victòries d'A.
+     * @param e Empats.
+     * @param d Derrotes d'A.
+     * @return Mitjana, variància i nombre de partides (amb els resultats afegits).
+     */
+    private static double[] moments(double v, double e, double d) {
+
+        if (v == 0 || e == 0 || d == 0) { v += 0.5; e += 0.5; d += 0.5; }
+        double n = v + e + d;
+        double s = (v + 0.5 * e) / n;
+        double variancia = (v * (1 - s) * (1 - s) + e * (0.5 - s) * (0.5 - s) + d * s * s) / n;
+
+        return new double[] {s, variancia, n};
+    }
+
+    /**
+     * Funció que converteix una puntuació mitjana en diferència d'Elo.
+     * @param s Puntuació mitjana (0..1).
+     * @return Diferència d'Elo (infinita si s és 0 o 1).
+     */
+    private static double diferenciaElo(double s) {
+        s = Math.max(0.0, Math.min(1.0, s));
+        return -400.0 * Math.log10(1.0 / s - 1.0);
+    }
+
+    /**
+     * Funció que converteix una diferència d'Elo en puntuació esperada.
+     * @param elo Diferència d'Elo.
+     * @return Puntuació esperada (0..1).
+     */
+    private static double puntuacioEsperada(double elo) {
+        return 1.0 / (1.0 + Math.pow(10.0, -elo / 400.0));
+    }
+
+}
@@ -0,0 +1,178 @@
+package edu.upc.epsevg.prop.othello.eines;
+
+import java.io.IOException;
+import java.io.BufferedReader;
+import java.nio.file.Path;
+import java.nio.file.Files;
+
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+import edu.upc.epsevg.prop.othello.utils.RegistreBinari;
+
+/**
+ * Classe amb les funcions per llegir i escriure partides en notació de transcripció ("f5d6c3...").
+ * Cada moviment són dues lletres: la columna (a..h, i = 0..7) i la fila (1..8, j = 0..7). Els passos no
+ * s'escriuen: en reproduir la partida es passa el torn quan el jugador no té cap moviment.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public final class Transcripcio {
+
+    /**
+     * Interfície del que rep les partides d'un fitxer.
+     */
+    public interface Receptor {
+
+        /**
+         * Funció que rep una partida legal. El vector es reutilitza entre partides.
+         * @param moviments Caselles jugades, en ordre de joc.
+         * @param n Nombre de moviments.
+         * @return Cert si la partida s'ha fet servir (per comptar-la).
+         * @throws IOException Si el receptor no pot escriure la partida.
+         */
+        boolean partida(int[] moviments, int n) throws IOException;
+    }
+
+    private Transcripcio() {
+    }
+
+    /**
+     * Funció que llegeix totes les partides d'un fitxer, de transcripcions (una per línia; les línies buides o que
+     * comencen per '#' s'ignoren) o de partides en format binari (RegistreBinari), i les passa al receptor.
+     * Les partides il·legals s'ignoren.
+     * @param fitxer Fitxer de partides.
+     * @param receptor Receptor de cada partida.
+     * @return Nombre de partides que el receptor ha fet servir.
+     * @throws IOException Si no es pot llegir el fitxer, o és un registre binari de posicions.
+     */
+    public static int llegeixPartides(Path fitxer, Receptor receptor) throws IOException {
+
+        int partides = 0;
+        if (RegistreBinari.esRegistre(fitxer)) {
+            try (RegistreBinari.Lector lector = new RegistreBinari.Lector(fitxer)) {
+                if (lector.getTipus() != RegistreBinari.PARTIDES) throw new IOException("El registre no és de partides: " + fitxer);
+                int[] moviments = new int[RegistreBinari.MAX_MOVIMENTS];
+                while (lector.seguent()) {
+                    int n = lector.moviments(moviments);
+                    if (legal(moviments, n) && receptor.partida(moviments, n)) partides++;
+                }
+            }
+        } else {
+            try (BufferedReader in = Files.newBufferedReader(fitxer)) {
+                String linia;
+                while ((linia = in.readLine()) != null) {
+                    if (linia.isBlank() || linia.startsWith("#")) continue;
+                    int[] moviments = llegeix(linia);
+                    if (moviments != null && receptor.partida(moviments, moviments.length)) partides++;
+                }
+            }
+        }
+
+        return partides;
+    }
+
+    /**
+     * Funció que comprova que una partida és legal des de la posició inicial. Els moviments venen d'un fitxer i
+     * poden ser qualsevol byte: cal descartar els que no són caselles, perquè el desplaçament 1L << c només en fa
+     * servir els 6 bits baixos (64 equivaldria a la casella 0).
+     * @param moviments Caselles jugades, en ordre de joc.
+     * @param n Nombre de moviments.
+     * @return Cert si tots els moviments són legals.
+     */
+    private static boolean legal(int[] moviments, int n) {
+
+        TaulerBits tb = TaulerBits.inicial();
+        for (int k = 0; k < n; k++) {
+            if (tb.moviments() == 0) tb.passa();
+            if (moviments[k] < 0 || moviments[k] > 63 || (tb.moviments() & (1L << moviments[k])) == 0) return false;
+            tb.fesMoviment(moviments[k]);
+        }
+
+        return true;
+    }
+
+    /**
+     * Funció que converteix una transcripció en la llista de caselles jugades.
+     * Ignora els espais i retorna null si algun moviment no és vàlid o il·legal.
+     * @param text Transcripció de la partida.
+     * @return Caselles (índexs de bit) en ordre de joc, o null.
+     */
+    public static int[] llegeix(String text) {
+
+        String t = text.replaceAll("\\s", "").toLowerCase();
+        if ((t.length() & 1) != 0) return null;
+
+        int[] moviments = new int[t.length() / 2];
+        TaulerBits tb = TaulerBits.inicial();
+        for (int k = 0; k < moviments.length; k++) {
+            int i = t.charAt(2*k) - 'a', j = t.charAt(2*k + 1) - '1';
+            if (i < 0 || i > 7 || j < 0 || j > 7) return null;
+            int casella = TaulerBits.casella(i, j);
+            if (tb.moviments() == 0) tb.passa();
+            if ((tb.moviments() & (1L << casella)) == 0) return null;
+            tb.fesMoviment(casella);
+            moviments[k] = casella;
+        }
+
+        return moviments;
+    }
+
+    /**
+     * Funció que retorna la posició a què s'arriba reproduint una partida des de la posició inicial,
+     * passant el torn quan el jugador no té cap moviment.
+     * @param moviments Caselles jugades, en ordre de joc (legals, com les que retorna llegeix).
+     * @return Tauler de bits de la posició, amb el torn de qui ha de tirar.
+     */
+    public static TaulerBits reprodueix(int[] moviments) {
+
+        TaulerBits tb = TaulerBits.inicial();
+        for (int moviment : moviments) {
+            if (tb.moviments() == 0) tb.passa();
+            tb.fesMoviment(moviment);
+        }
+        if (tb.moviments() == 0 && !tb.finalPartida()) tb.passa();
+
+        return tb;
+    }
+
+    /**
+     * Funció que llegeix una posició en format text.
+     * @param posicio 64 caràcters ('X' jugador 1, 'O' jugador 2, qualsevol altre buida) en l'ordre dels bits.
+     * @param torn "X" si li toca al jugador 1, "O" si li toca al jugador 2.
+     * @return Tauler de bits de la posició, o null si el format no és vàlid.
+     */
+    public static TaulerBits llegeixPosicio(String posicio, String torn) {
+
+        if (posicio.length() != 64 || !(torn.equalsIgnoreCase("X") || torn.equalsIgnoreCase("O"))) return null;
+        long p1 = 0L, p2 = 0L;
+        for (int c = 0; c < 64; c++) {
+            char x = Character.toUpperCase(posicio.charAt(c));
+            if (x == 'X')      p1 |= 1L << c;
+            else if (x == 'O') p2 |= 1L << c;
+        }
+
+        return new TaulerBits(p1, p2, torn.equalsIgnoreCase("X"));
+    }
+
+    /**
+     * Funció que escriu una casella en notació de transcripció.
+     * @param casella Índex de bit de la casella.
+     * @return Dues lletres (columna i fila).
+     */
+    public static String casella(int casella) {
+        return "" + (char) ('a' + (casella & 7)) + (char) ('1' + (casella >>> 3));
+    }
+
+    /**
+     * Funció que escriu una partida en notació de transcripció.
+     * @param moviments Caselles jugades, en ordre de joc.
+     * @param n Nombre de moviments.
+     * @return Transcripció de la partida.
+     */
+    public static String escriu(int[] moviments, int n) {
+
+        StringBuilder sb = new StringBuilder(2 * n);
+        for (int k = 0; k < n; k++) sb.append(casella(moviments[k]));
+
+        return sb.toString();
+    }
+
+}
@@ -5,38 +5,214 @@ import edu.upc.epsevg.prop.othello.CellType;
 import edu.upc.epsevg.prop.othello.IPlayer;
 import edu.upc.epsevg.prop.othello.IAuto;
 import edu.upc.epsevg.prop.othello.Move;
+import edu.upc.epsevg.prop.othello.SearchType;
 
 import edu.upc.epsevg.prop.othello.utils.MiniMaxID;
 import edu.upc.epsevg.prop.othello.utils.GameStatusNPC;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
+import edu.upc.epsevg.prop.othello.utils.LlibreObertures;
+import edu.upc.epsevg.prop.othello.utils.ProbCut;
+import edu.upc.epsevg.prop.othello.utils.TipusCerca;
 
 /**
  * Classe que representa el jugador que utilitza l'algorisme miniMax limitat en temps.
  * @author Omar Briqa, Joaquim Hervas
  */
-public class PlayerID implements IPlayer, IAuto{
+public class PlayerID implements IPlayer, IAuto, AutoCloseable{
     
     private final String nom;
     private final MiniMaxID MM;
     private long TIMELIMIT = 2000;
-    private boolean tempsAcabat = false;
+    private final static int MIDA_TAULA_MB = 64;
+    private final static LlibreObertures LLIBRE_INICIAL = LlibreObertures.carregaPerDefecte();
+    private LlibreObertures llibre = LLIBRE_INICIAL;
+    private volatile boolean tempsAcabat = false, ponderant = false, ponderacioAturada = false;
     private CellType Jugador = CellType.EMPTY;
+    private final static int PONDERACIO_MAXIMA = 4;
+    private boolean ponderacio = false;
+    private Thread filPonderacio = null;
+    private long hashPonderat = 0L;
+    private int encertsPonderacio = 0;
+    private boolean determinista = false;
 
     /**
      * Constructora del jugador que utilitza l'algorisme miniMax limitat en temps.
      * @param sec Nombre de segons màxim per cada tirada.
      */
     public PlayerID(int sec) {
+        this(sec, 1);
+    }
+    
+    /**
+     * Constructora del jugador que utilitza l'algorisme miniMax limitat en temps, cercant amb diversos fils.
+     * @param sec Nombre de segons màxim per cada tirada.
+     * @param nFils Nombre de fils de cerca.
+     */
+    public PlayerID(int sec, int nFils) {
+        this(sec, nFils, TipusCerca.ALFA_BETA);
+    }
+    
+    /**
+     * Constructora del jugador que utilitza l'algorisme miniMax limitat en temps, indicant el tipus de cerca.
+     * @param sec Nombre de segons màxim per cada tirada.
+     * @param nFils Nombre de fils de cerca.
+     * @param tipus Tipus de cerca (alfa-beta o PVS amb finestres d'aspiració).
+     */
+    public PlayerID(int sec, int nFils, TipusCerca tipus) {
         nom = "NPCMiniMaxIDS";
         TIMELIMIT = sec * 1000;
-        MM = new MiniMaxID(this, Jugador, TIMELIMIT);
+        MM = new MiniMaxID(this, Jugador, TIMELIMIT, MIDA_TAULA_MB, nFils);
+        MM.setTipusCerca(tipus);
     }
     
     @Override
     public Move move(GameStatus gs) {
+        aturaPonderacio();
         tempsAcabat = false;
         Jugador = gs.getCurrentPlayer();
-        GameStatusNPC GS = new GameStatusNPC(gs);
-        return MM.miniMaxID(GS, Jugador);
+        TaulerBits TB = new TaulerBits(new GameStatusNPC(gs));
+        if (hashPonderat != 0L && TB.getHash() == hashPonderat) encertsPonderacio++;
+        
+        Move mov;
+        int movLlibre = (llibre != null) ? llibre.consulta(TB) : -1;
+        if (movLlibre != -1) {
+            MM.getMetriques().tiradaLlibre(TB.buides(), movLlibre);
+            mov = new Move(TaulerBits.punt(movLlibre), 0L, 0, SearchType.MINIMAX_IDS);
+        }
+        else mov = MM.miniMaxID(TB, Jugador);
+        
+        if (ponderacio && !determinista && mov != null) iniciaPonderacio(TB, TaulerBits.casella(mov.getTo()));
+        return mov;
+    }
+    
+    /**
+     * Funció que activa el mode determinista: cada tirada cerca fins a una profunditat o un nombre exacte de nodes,
+     * sense consultar el rellotge ni el timeout, i no es pondera. Amb un sol fil, dues partides amb els mateixos
+     * moviments del contrari donen els mateixos moviments i nombres de nodes, independentment de la màquina.
+     * @param profunditat Profunditat màxima de cada tirada (0 sense límit).
+     * @param nodes Nombre màxim de nodes de cada tirada (0 sense límit).
+     *              Amb els dos límits a 0 es torna a la cerca limitada per temps.
+     */
+    public void setDeterminista(int profunditat, long nodes) {
+        
+        determinista = (profunditat > 0 || nodes > 0);
+        if (determinista) aturaPonderacio();
+        MM.setLimits(profunditat, nodes);
+        MM.setDeterminista(determinista);
+    }
+    
+    /**
+     * Funció que activa o desactiva la ponderació: després de cada tirada, mentre pensa el contrari, es cerca
+     * en segon pla la posició que quedaria després de la seva resposta més probable (la millor segons la
+     * taula de transposició). La cerca omple la taula de transposició i la d'història, de manera que si el
+     * contrari fa aquesta resposta la tirada següent arriba de seguida a la profunditat ponderada i continua
+     * a partir d'aquí. Si en fa una altra, les entrades de la resta de l'arbre també es poden reaprofitar.
+     * El framework no avisa el jugador quan s'acaba la partida: qui activi la ponderació ha de cridar close()
+     * (o aturaPonderacio()) en acabar-la, o el fil pot continuar cercant fins a PONDERACIO_MAXIMA vegades el
+     * temps límit després de la darrera tirada.
+     * @param ponderacio Cert per ponderar durant el torn del contrari.
+     */
+    public void setPonderacio(boolean ponderacio) {
+        this.ponderacio = ponderacio;
+        if (!ponderacio) aturaPonderacio();
+    }
+    
+    /**
+     * Funció que retorna quantes vegades la posició rebuda ha estat la que s'havia ponderat.
+     * @return Nombre d'encerts de la ponderació.
+     */
+    public int getEncertsPonderacio() {
+        return encertsPonderacio;
+    }
+    
+    /**
+     * Funció que atura la ponderació en curs (si n'hi ha) i n'espera el final. Es crida en començar cada
+     * tirada i s'ha de cridar quan s'acaba la partida perquè el fil no continuï cercant fins al límit.
+     */
+    public void aturaPonderacio() {
+        
+        Thread fil = filPonderacio;
+        if (fil == null) return;
+        ponderacioAturada = true;
+        try {
+            fil.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        filPonderacio = null;
+        ponderant = false;
+    }
+    
+    /**
+     * Funció que comença a ponderar la posició esperada després del moviment que s'acaba de triar i la
+     * resposta més probable del contrari (o el seu pas). No pondera si la partida es pot acabar abans de la
+     * tirada següent (amb el nostre moviment o amb alguna resposta del contrari), perquè llavors no es tornaria
+     * a cridar move per aturar la ponderació.
+     * @param TB Tauler de bits de la posició on s'ha tirat.
+     * @param moviment Moviment que s'ha triat.
+     */
+    private void iniciaPonderacio(TaulerBits TB, int moviment) {
+        
+        TaulerBits esperat = new TaulerBits(TB);
+        esperat.fesMoviment(moviment);
+        if (esperat.finalPartida() || respostaAcaba(esperat)) { hashPonderat = 0L; return; }
+        int resposta = MM.movimentEsperat(esperat);
+        if (resposta == -1) esperat.passa();
+        else                esperat.fesMoviment(resposta);
+        if (esperat.finalPartida() || esperat.moviments() == 0) { hashPonderat = 0L; return; }
+        
+        hashPonderat = esperat.getHash();
+        ponderacioAturada = false;
+        ponderant = true;
+        filPonderacio = new Thread(() -> MM.pondera(esperat, Jugador, PONDERACIO_MAXIMA * TIMELIMIT), "PlayerID-ponderacio");
+        filPonderacio.setDaemon(true);
+        filPonderacio.start();
+    }
+    
+    /**
+     * Funció que indica si alguna resposta del jugador que té el torn acaba la partida.
+     * @param tb Tauler de bits (sense acabar).
+     * @return Cert si algun moviment del jugador que té el torn deixa la partida acabada.
+     */
+    private static boolean respostaAcaba(TaulerBits tb) {
+        
+        TaulerBits fill = new TaulerBits(tb);
+        for (long m = tb.moviments(); m != 0; m &= m - 1) {
+            int c = Long.numberOfTrailingZeros(m);
+            long girades = fill.fesMoviment(c);
+            boolean acaba = fill.finalPartida();
+            fill.desfesMoviment(c, girades);
+            if (acaba) return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Funció que assigna el llibre d'obertures que es consulta abans de cercar (per defecte, el de la
+     * propietat del sistema "npc.llibre").
+     * @param llibre Llibre d'obertures, o null per cercar sempre.
+     */
+    public void setLlibre(LlibreObertures llibre) {
+        this.llibre = llibre;
+    }
+
+    /**
+     * Funció que activa Multi-ProbCut a la cerca (per defecte desactivat).
+     * @param probCut Paràmetres de ProbCut (per exemple, ProbCut.carregaPerDefecte()), o null per desactivar-lo.
+     */
+    public void setProbCut(ProbCut probCut) {
+        MM.setProbCut(probCut);
+    }
+
+    /**
+     * Funció que allibera els recursos del jugador en acabar la partida: atura la ponderació i els fils
+     * dels ajudants de la cerca.
+     */
+    @Override
+    public void close() {
+        aturaPonderacio();
+        MM.close();
     }
 
     @Override
@@ -45,11 +221,13 @@ public class PlayerID implements IPlayer, IAuto{
     }
     
     /**
-     * Funció que retorna si s'ha acabat el temps límit per explorar durant la jugada.
+     * Funció que retorna si s'ha acabat el temps límit per explorar durant la jugada o, mentre es pondera, si
+     * s'ha d'aturar la ponderació. Un timeout que arribi tard (quan move ja ha retornat i s'està ponderant)
+     * no atura la ponderació, i move el descarta en començar la tirada següent.
      * @return Cert en cas de que s'hagi agotat el temps per explorar nodes durant la jugada.
      */
     public boolean tempsAcabat(){
-        return tempsAcabat;
+        return ponderant ? ponderacioAturada : tempsAcabat;
     }
 
     @Override
@@ -8,6 +8,7 @@ import edu.upc.epsevg.prop.othello.Move;
 
 import edu.upc.epsevg.prop.othello.utils.MiniMax;
 import edu.upc.epsevg.prop.othello.utils.GameStatusNPC;
+import edu.upc.epsevg.prop.othello.utils.TaulerBits;
 
 /**
  * Classe que representa el jugador que utilitza l'algorisme miniMax limitat en profunditat.
@@ -33,8 +34,8 @@ public class PlayerMiniMax implements IPlayer, IAuto {
     @Override
     public Move move(GameStatus gs) {
         Jugador = gs.getCurrentPlayer();
-        GameStatusNPC GS = new GameStatusNPC(gs);
-        return MM.miniMax(GS, Jugador);
+        TaulerBits TB = new TaulerBits(new GameStatusNPC(gs));
+        return MM.miniMax(TB, Jugador);
     }
 
     @Override
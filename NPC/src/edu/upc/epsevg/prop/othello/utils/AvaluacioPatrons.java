@@ -0,0 +1,315 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+
+/**
+ * Classe que avalua un tauler sumant pesos de patrons guardats en taules.
+ * Cada patró és un conjunt fix de caselles i el seu índex és el número en base 3 que formen les caselles
+ * (0 buida, 1 pròpia, 2 contrària). Els patrons equivalents per simetria comparteixen taula:
+ * arestes, files/columnes 2, 3 i 4, les dues diagonals llargues i les quatre cantonades de 3x3.
+ * Els índexs es calculen directament dels bitboards, byte a byte (les columnes sobre el tauler transposat),
+ * amb taules de conversió binari-ternari.
+ * Tots els pesos es guarden multiplicats per 2 (cada casella és a la seva fila i a la seva columna) i
+ * el resultat es divideix per 2 al final.
+ * També guarda els pesos de mobilitat i frontera que fa servir Heuristica, i tots els pesos es poden
+ * guardar i carregar en un fitxer binari (el que genera l'ajust de pesos).
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class AvaluacioPatrons {
+
+    /** Famílies de patrons de 8 caselles. */
+    public final static int ARESTA = 0, LINIA2 = 1, LINIA3 = 2, LINIA4 = 3, DIAGONAL = 4, FAMILIES_LINIA = 5;
+
+    /** Nombre d'índexs d'un patró de 8 caselles (3^8) i d'una cantonada de 3x3 (3^9). */
+    public final static int MIDA_LINIA = 6561, MIDA_CANTONADA = 19683;
+
+    /** Nombre de patrons que sumen a cada avaluació i nombre total de pesos de patrons. */
+    public final static int NUM_PATRONS = 22, MIDA_PESOS = FAMILIES_LINIA * MIDA_LINIA + MIDA_CANTONADA;
+
+    private final static int MAGIC = 0x4E504331, VERSIO = 1;
+
+    private final static int CORNERCAPTURED = 1000, UNLIKELYCORNER = -1000;
+    private final static int FAMILIA_FILA[] = {ARESTA, LINIA2, LINIA3, LINIA4, LINIA4, LINIA3, LINIA2, ARESTA};
+    private final static long COL_A = 0x0101010101010101L;
+    private final static long DIAG_A1H8 = 0x8040201008040201L, DIAG_H1A8 = 0x0102040810204080L;
+
+    private final static short BINARI_TERNARI[] = new short[256];
+    private final static short TRIO[] = new short[64], TRIO_INVERS[] = new short[64];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int t = 0;
+            for (int i = 7; i >= 0; i--) t = t * 3 + ((b >>> i) & 1);
+            BINARI_TERNARI[b] = (short) t;
+        }
+        for (int b = 0; b < 64; b++) {
+            int p = b & 7, o = b >>> 3;
+            int pi = ((p & 1) << 2) | (p & 2) | (p >>> 2), oi = ((o & 1) << 2) | (o & 2) | (o >>> 2);
+            TRIO[b] = (short) (BINARI_TERNARI[p] + 2 * BINARI_TERNARI[o]);
+            TRIO_INVERS[b] = (short) (BINARI_TERNARI[pi] + 2 * BINARI_TERNARI[oi]);
+        }
+    }
+
+    private final short[][] linies = new short[FAMILIES_LINIA][MIDA_LINIA];
+    private final short[] cantonades = new short[MIDA_CANTONADA];
+    private int pesMobilitat = 10, pesFrontera = 5;
+
+    /**
+     * Constructora de la classe amb els pesos inicials: la taula de pesos estàtics de Heuristica
+     * repartida a les files i les columnes, i els punts de cantonada capturada de fHCorner.
+     */
+    public AvaluacioPatrons() {
+
+        for (int f = ARESTA; f <= LINIA4; f++) {
+            for (int idx = 0; idx < MIDA_LINIA; idx++) {
+                int v = 0;
+                for (int i = 0, x = idx; i < 8; i++, x /= 3) {
+                    if (x % 3 == 1)      v += Heuristica.pesCasella(i + f*8);
+                    else if (x % 3 == 2) v -= Heuristica.pesCasella(i + f*8);
+                }
+                linies[f][idx] = (short) v;
+            }
+        }
+        for (int idx = 0; idx < MIDA_CANTONADA; idx++) {
+            if (idx % 3 == 1)      cantonades[idx] = (short) (2 * CORNERCAPTURED);
+            else if (idx % 3 == 2) cantonades[idx] = (short) (2 * UNLIKELYCORNER);
+        }
+    }
+
+    /**
+     * Funció que retorna el valor del tauler des del punt de vista del jugador de 'propies'.
+     * @param propies Bitboard del jugador favorable.
+     * @param contraries Bitboard del contrari.
+     * @return Valor heurístic.
+     */
+    public int avalua(long propies, long contraries) {
+
+        short[] aresta = linies[ARESTA], linia2 = linies[LINIA2], linia3 = linies[LINIA3], linia4 = linies[LINIA4];
+        long tp = transposa(propies), to = transposa(contraries);
+
+        int h = aresta[indexFila(propies, contraries, 0)] + aresta[indexFila(propies, contraries, 7)]
+              + aresta[indexFila(tp, to, 0)]              + aresta[indexFila(tp, to, 7)]
+              + linia2[indexFila(propies, contraries, 1)] + linia2[indexFila(propies, contraries, 6)]
+              + linia2[indexFila(tp, to, 1)]              + linia2[indexFila(tp, to, 6)]
+              + linia3[indexFila(propies, contraries, 2)] + linia3[indexFila(propies, contraries, 5)]
+              + linia3[indexFila(tp, to, 2)]              + linia3[indexFila(tp, to, 5)]
+              + linia4[indexFila(propies, contraries, 3)] + linia4[indexFila(propies, contraries, 4)]
+              + linia4[indexFila(tp, to, 3)]              + linia4[indexFila(tp, to, 4)];
+
+        h += linies[DIAGONAL][indexLinia(recull(propies, DIAG_A1H8), recull(contraries, DIAG_A1H8))];
+        h += linies[DIAGONAL][indexLinia(recull(propies, DIAG_H1A8), recull(contraries, DIAG_H1A8))];
+
+        h += cantonades[indexCantonada(propies, contraries, 0)] + cantonades[indexCantonada(propies, contraries, 1)]
+           + cantonades[indexCantonada(propies, contraries, 2)] + cantonades[indexCantonada(propies, contraries, 3)];
+
+        return h >> 1;
+    }
+
+    /**
+     * Funció que calcula els índexs de tots els patrons d'un tauler dins el vector pla de pesos
+     * (primer les famílies de línia, de MIDA_LINIA en MIDA_LINIA, i després les cantonades).
+     * La suma dels pesos d'aquests índexs, dividida per 2, és la part de patrons d'avalua.
+     * @param propies Bitboard del jugador favorable.
+     * @param contraries Bitboard del contrari.
+     * @param index Vector de NUM_PATRONS posicions on es deixen els índexs.
+     */
+    public static void indexos(long propies, long contraries, int[] index) {
+
+        long tp = transposa(propies), to = transposa(contraries);
+        int n = 0;
+        for (int r = 0; r < 8; r++) {
+            int desp = FAMILIA_FILA[r] * MIDA_LINIA;
+            index[n++] = desp + indexFila(propies, contraries, r);
+            index[n++] = desp + indexFila(tp, to, r);
+        }
+        index[n++] = DIAGONAL * MIDA_LINIA + indexLinia(recull(propies, DIAG_A1H8), recull(contraries, DIAG_A1H8));
+        index[n++] = DIAGONAL * MIDA_LINIA + indexLinia(recull(propies, DIAG_H1A8), recull(contraries, DIAG_H1A8));
+        for (int k = 0; k < 4; k++)
+            index[n++] = FAMILIES_LINIA * MIDA_LINIA + indexCantonada(propies, contraries, k);
+    }
+
+    /**
+     * Funció que retorna un pes del vector pla de pesos.
+     * @param i Posició dins el vector pla (vegeu indexos).
+     * @return Pes (multiplicat per 2).
+     */
+    public short getPes(int i) {
+        return (i < FAMILIES_LINIA * MIDA_LINIA) ? linies[i / MIDA_LINIA][i % MIDA_LINIA] : cantonades[i - FAMILIES_LINIA * MIDA_LINIA];
+    }
+
+    /**
+     * Funció que assigna un pes del vector pla de pesos.
+     * @param i Posició dins el vector pla (vegeu indexos).
+     * @param pes Pes (multiplicat per 2).
+     */
+    public void setPes(int i, short pes) {
+        if (i < FAMILIES_LINIA * MIDA_LINIA) linies[i / MIDA_LINIA][i % MIDA_LINIA] = pes;
+        else                                 cantonades[i - FAMILIES_LINIA * MIDA_LINIA] = pes;
+    }
+
+    /**
+     * Funció que retorna el pes de cada moviment de diferència de mobilitat.
+     * @return Pes de mobilitat.
+     */
+    public int getPesMobilitat() {
+        return pesMobilitat;
+    }
+
+    /**
+     * Funció que retorna el pes de cada casella de diferència de mobilitat potencial (frontera).
+     * @return Pes de frontera.
+     */
+    public int getPesFrontera() {
+        return pesFrontera;
+    }
+
+    /**
+     * Funció que assigna els pesos de mobilitat i de frontera.
+     * @param mobilitat Pes de mobilitat.
+     * @param frontera Pes de frontera.
+     */
+    public void setPesosMobilitat(int mobilitat, int frontera) {
+        pesMobilitat = mobilitat;
+        pesFrontera = frontera;
+    }
+
+    /**
+     * Funció que escriu tots els pesos en format binari: capçalera (MAGIC, VERSIO), pesos de mobilitat
+     * i frontera, i els MIDA_PESOS pesos de patrons com a shorts, en l'ordre del vector pla.
+     * @param sortida Flux on s'escriuen els pesos (no es tanca).
+     * @throws IOException Si no es pot escriure.
+     */
+    public void guarda(OutputStream sortida) throws IOException {
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(sortida));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSIO);
+        out.writeInt(pesMobilitat);
+        out.writeInt(pesFrontera);
+        for (short[] taula : linies)
+            for (short pes : taula) out.writeShort(pes);
+        for (short pes : cantonades) out.writeShort(pes);
+        out.flush();
+    }
+
+    /**
+     * Funció que llegeix uns pesos escrits amb guarda.
+     * @param entrada Flux d'on es llegeixen els pesos (no es tanca).
+     * @return Avaluador amb els pesos llegits.
+     * @throws IOException Si no es pot llegir o el format no és correcte.
+     */
+    public static AvaluacioPatrons carrega(InputStream entrada) throws IOException {
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(entrada));
+        if (in.readInt() != MAGIC || in.readInt() != VERSIO)
+            throw new IOException("El fitxer no conté pesos de patrons vàlids");
+
+        AvaluacioPatrons patrons = new AvaluacioPatrons();
+        patrons.setPesosMobilitat(in.readInt(), in.readInt());
+        for (short[] taula : patrons.linies)
+            for (int i = 0; i < taula.length; i++) taula[i] = in.readShort();
+        for (int i = 0; i < patrons.cantonades.length; i++) patrons.cantonades[i] = in.readShort();
+
+        return patrons;
+    }
+
+    /**
+     * Funció que retorna la taula de pesos d'una família de patrons de 8 caselles (per modificar-la o llegir-la).
+     * @param familia ARESTA, LINIA2, LINIA3, LINIA4 o DIAGONAL.
+     * @return Taula de pesos (multiplicats per 2) indexada per l'índex ternari.
+     */
+    public short[] getTaulaLinia(int familia) {
+        return linies[familia];
+    }
+
+    /**
+     * Funció que retorna la taula de pesos de les cantonades de 3x3.
+     * @return Taula de pesos (multiplicats per 2) indexada per l'índex ternari.
+     */
+    public short[] getTaulaCantonada() {
+        return cantonades;
+    }
+
+    /**
+     * Funció que retorna l'índex ternari de la fila r.
+     * @param p Bitboard propi.
+     * @param o Bitboard contrari.
+     * @param r Fila (0..7).
+     * @return Índex del patró.
+     */
+    static int indexFila(long p, long o, int r) {
+        return indexLinia((int) (p >>> (r*8)) & 0xFF, (int) (o >>> (r*8)) & 0xFF);
+    }
+
+    /**
+     * Funció que retorna l'índex ternari de la columna c (de la fila 0 a la 7).
+     * @param p Bitboard propi.
+     * @param o Bitboard contrari.
+     * @param c Columna (0..7).
+     * @return Índex del patró.
+     */
+    static int indexColumna(long p, long o, int c) {
+        return indexFila(transposa(p), transposa(o), c);
+    }
+
+    /**
+     * Funció que retorna l'índex ternari de la cantonada de 3x3 k, amb les caselles ordenades des de la cantonada cap a dins
+     * (la cantonada és el dígit de menys pes).
+     * @param p Bitboard propi.
+     * @param o Bitboard contrari.
+     * @param k Cantonada: 0 (0,0), 1 (7,0), 2 (0,7), 3 (7,7).
+     * @return Índex del patró.
+     */
+    static int indexCantonada(long p, long o, int k) {
+
+        short[] trio = ((k & 1) == 0) ? TRIO : TRIO_INVERS;
+        int desp = ((k & 1) == 0) ? 0 : 5;
+        int f0, f1, f2;
+        if ((k & 2) == 0) { f0 = desp; f1 = desp + 8; f2 = desp + 16; }
+        else              { f0 = desp + 56; f1 = desp + 48; f2 = desp + 40; }
+
+        return trio[(int) (p >>> f0) & 7 | ((int) (o >>> f0) & 7) << 3]
+             + trio[(int) (p >>> f1) & 7 | ((int) (o >>> f1) & 7) << 3] * 27
+             + trio[(int) (p >>> f2) & 7 | ((int) (o >>> f2) & 7) << 3] * 729;
+    }
+
+    /**
+     * Funció que retorna l'índex ternari de 8 caselles a partir dels seus bits propis i contraris.
+     * @param propies Byte amb les caselles pròpies.
+     * @param contraries Byte amb les caselles contràries.
+     * @return Índex del patró.
+     */
+    private static int indexLinia(int propies, int contraries) {
+        return BINARI_TERNARI[propies] + 2 * BINARI_TERNARI[contraries];
+    }
+
+    /**
+     * Funció que transposa un bitboard (la casella (i,j) passa a (j,i)), de manera que les columnes queden com a files.
+     * @param b Bitboard.
+     * @return Bitboard transposat.
+     */
+    static long transposa(long b) {
+        long t;
+        t = (b ^ (b >>> 7)) & 0x00AA00AA00AA00AAL; b ^= t ^ (t << 7);
+        t = (b ^ (b >>> 14)) & 0x0000CCCC0000CCCCL; b ^= t ^ (t << 14);
+        t = (b ^ (b >>> 28)) & 0x00000000F0F0F0F0L; b ^= t ^ (t << 28);
+        return b;
+    }
+
+    /**
+     * Funció que recull els bits d'una diagonal llarga en un byte (bit i = columna i).
+     * @param b Bitboard.
+     * @param diagonal Màscara de la diagonal.
+     * @return Byte amb la diagonal.
+     */
+    private static int recull(long b, long diagonal) {
+        return (int) (((b & diagonal) * COL_A) >>> 56);
+    }
+
+}
@@ -1,5 +1,6 @@
 package edu.upc.epsevg.prop.othello.utils;
 
+import edu.upc.epsevg.prop.othello.CellType;
 import edu.upc.epsevg.prop.othello.GameStatus;
 
 /**
@@ -19,6 +20,26 @@ public class GameStatusNPC extends GameStatus {
         super(gs);
     }
     
+    /**
+     * Constructora a partir d'un tauler de bits (la conversió inversa de TaulerBits(GameStatusNPC)).
+     * Permet fer servir el camí de GameStatus des de qualsevol posició, no només des de la inicial.
+     * @param tb Tauler de bits que representa la partida d'Othello.
+     */
+    public GameStatusNPC(TaulerBits tb) {
+        super();
+        board_occupied.clear();
+        board_color.clear();
+        for (long b = tb.getP1() | tb.getP2(); b != 0; b &= b - 1) {
+            int c = Long.numberOfTrailingZeros(b);
+            board_occupied.set(c);
+            board_color.set(c, (tb.getP1() & (1L << c)) != 0);
+        }
+        piecesCountP1 = Long.bitCount(tb.getP1());
+        piecesCountP2 = Long.bitCount(tb.getP2());
+        currentPlayer = tb.getTorn();
+        hashValue = tb.getHash();
+    }
+    
     /**
      * Funció que retorna el nombre total de peces que té en possesió el jugador 1.
      * @return Nombre total de peces que té ara el jugador 1.
@@ -79,4 +100,11 @@ public class GameStatusNPC extends GameStatus {
         return this.hashValue;
     }
     
+    /**
+     * Funció que passa el torn al contrari sense moure cap peça (quan el jugador actual no té moviments).
+     */
+    public void passaTorn(){
+        currentPlayer = CellType.opposite(currentPlayer);
+    }
+    
 }
@@ -0,0 +1,147 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Classe que gestiona el temps de cada tirada a partir d'un instant límit (System.nanoTime).
+ * Els cercadors només consulten el rellotge cada cert nombre de nodes i, entre iteracions, el gestor
+ * estima el temps de la iteració següent a partir del factor de ramificació de les anteriors per no
+ * començar-ne cap que no tingui temps d'acabar com a mínim el primer moviment de l'arrel.
+ * També s'atura si el marc avisa del timeout abans de l'instant límit.
+ * En mode determinista no es consulta ni el rellotge ni el timeout: la cerca només s'atura pels seus límits de
+ * profunditat o de nodes, i dues execucions de la mateixa seqüència de cerques fan exactament el mateix arbre.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class GestorTemps {
+
+    /** Màscara de nodes entre dues consultes del rellotge (cada 1024 nodes). */
+    public final static int MASCARA_NODES = 0x3FF;
+
+    /** Límit per tirada que indica que no hi ha límit de temps. */
+    public final static long SENSE_LIMIT = 0L;
+
+    private final static long MARGE_NS = 30_000_000L;
+    private final static double FACTOR_INICIAL = 4.0, FACTOR_MINIM = 1.5, FACTOR_MAXIM = 16.0, FRACCIO_PRIMER = 0.5;
+
+    private final long limitNs;
+    private final BooleanSupplier aturadaExterna;
+    private volatile long fi = Long.MAX_VALUE;
+    private long inici = 0L, iniciIteracio = 0L, duradaDarrera = 0L, duradaAnterior = 0L;
+    private double factor = FACTOR_INICIAL;
+    private volatile boolean determinista = false;
+
+    /**
+     * Constructora de la classe.
+     * @param limitMs Temps màxim per tirada en mil·lisegons (SENSE_LIMIT per no limitar-lo).
+     * @param aturadaExterna Condició d'aturada del marc (timeout), que es consulta junt amb el rellotge.
+     */
+    public GestorTemps(long limitMs, BooleanSupplier aturadaExterna) {
+        this.limitNs = limitMs * 1_000_000L;
+        this.aturadaExterna = aturadaExterna;
+    }
+
+    /**
+     * Funció que activa o desactiva el mode determinista, en què esgotat() sempre és fals i sempre es pot
+     * començar una altra iteració.
+     * @param determinista Cert per no tenir en compte ni el rellotge ni el timeout del marc.
+     */
+    public void setDeterminista(boolean determinista) {
+        this.determinista = determinista;
+    }
+
+    /**
+     * Funció que comença a comptar el temps d'una nova tirada.
+     */
+    public void iniciaTirada() {
+        inici = System.nanoTime();
+        fi = (limitNs <= 0) ? inici + Long.MAX_VALUE / 2 : inici + Math.max(limitNs - MARGE_NS, limitNs / 2);
+        duradaDarrera = duradaAnterior = 0L;
+        factor = FACTOR_INICIAL;
+    }
+
+    /**
+     * Funció que comença a comptar el temps d'una ponderació (cerca durant el torn del contrari). No hi ha marge:
+     * normalment l'atura el jugador abans d'arribar al límit, que només evita que continuï indefinidament.
+     * @param limitMs Temps màxim de la ponderació en mil·lisegons.
+     */
+    public void iniciaPonderacio(long limitMs) {
+        inici = System.nanoTime();
+        fi = inici + limitMs * 1_000_000L;
+        duradaDarrera = duradaAnterior = 0L;
+        factor = FACTOR_INICIAL;
+    }
+
+    /**
+     * Funció que retorna si s'ha arribat a l'instant límit o el marc ha avisat del timeout.
+     * Consulta el rellotge, per tant els cercadors només l'han de cridar cada MASCARA_NODES + 1 nodes.
+     * @return Cert si la cerca s'ha d'aturar.
+     */
+    public boolean esgotat() {
+        return !determinista && (aturadaExterna.getAsBoolean() || System.nanoTime() - fi >= 0);
+    }
+
+    /**
+     * Funció que retorna una condició d'aturada per una part de la cerca (per exemple, la resolució del final) que,
+     * a més de fer-se certa quan esgotat() ho és, es fa certa quan passa la fracció indicada del temps que queda.
+     * En mode determinista és sempre falsa.
+     * @param fraccio Fracció del temps que queda fins a l'instant límit.
+     * @return Condició d'aturada, que consulta el rellotge (només s'ha de cridar periòdicament).
+     */
+    public BooleanSupplier aturadaParcial(double fraccio) {
+
+        long ara = System.nanoTime();
+        long fiParcial = ara + (long) ((fi - ara) * fraccio);
+        return () -> esgotat() || (!determinista && System.nanoTime() - fiParcial >= 0);
+    }
+
+    /**
+     * Funció que marca l'inici d'una iteració de la cerca iterativa.
+     */
+    public void iniciaIteracio() {
+        iniciIteracio = System.nanoTime();
+    }
+
+    /**
+     * Funció que marca el final d'una iteració completa i actualitza el factor de ramificació estimat
+     * amb la relació entre la durada d'aquesta iteració i la de l'anterior.
+     */
+    public void acabaIteracio() {
+
+        duradaAnterior = duradaDarrera;
+        duradaDarrera = System.nanoTime() - iniciIteracio;
+        if (duradaAnterior > 0) {
+            double f = (double) duradaDarrera / duradaAnterior;
+            factor = Math.min(FACTOR_MAXIM, Math.max(FACTOR_MINIM, (factor + f) / 2));
+        }
+    }
+
+    /**
+     * Funció que retorna si val la pena començar una altra iteració: cal que el temps estimat per acabar
+     * el primer moviment de l'arrel (una fracció de la iteració sencera) càpiga abans de l'instant límit.
+     * @return Cert si es pot començar la iteració següent.
+     */
+    public boolean potIniciarIteracio() {
+
+        if (determinista) return true;
+        if (esgotat()) return false;
+        long prevista = (long) (duradaDarrera * factor * FRACCIO_PRIMER);
+        return System.nanoTime() + prevista - fi < 0;
+    }
+
+    /**
+     * Funció que retorna el temps transcorregut des de l'inici de la tirada.
+     * @return Temps en mil·lisegons.
+     */
+    public long getTempsTranscorregut() {
+        return (System.nanoTime() - inici) / 1_000_000L;
+    }
+
+    /**
+     * Funció que retorna el factor de ramificació estimat (relació entre durades d'iteracions consecutives).
+     * @return Factor de ramificació.
+     */
+    public double getFactorRamificacio() {
+        return factor;
+    }
+
+}
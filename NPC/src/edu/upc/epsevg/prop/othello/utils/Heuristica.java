@@ -1,6 +1,9 @@
 package edu.upc.epsevg.prop.othello.utils;
 
 import java.awt.Point;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.FileInputStream;
 import java.util.Random;
 import java.util.ArrayList;
 import edu.upc.epsevg.prop.othello.CellType;
@@ -28,10 +31,54 @@ public class Heuristica {
                                                         {-3, -4, -1, -1, -1, -1, -4, -3},
                                                         { 4, -3,  2,  2,  2,  2, -3,  4} };
 
+    private final static long LLAVOR_ALEATORIA = 0x4E5043L;
+    private final Random aleatori = new Random(LLAVOR_ALEATORIA);
+
+    private final static String PROPIETAT_PESOS = "npc.pesos", RECURS_PESOS = "pesos.bin";
+    private final static AvaluacioPatrons PATRONS_INICIALS = carregaPesos();
+    private final AvaluacioPatrons patrons;
+
+    /**
+     * Constructora de la classe amb els pesos de patrons inicials.
+     */
+    public Heuristica() {
+        this(PATRONS_INICIALS);
+    }
+    
+    /**
+     * Constructora de la classe amb uns pesos de patrons concrets.
+     * @param patrons Avaluador de patrons que es fa servir amb els taulers de bits.
+     */
+    public Heuristica(AvaluacioPatrons patrons) {
+        this.patrons = patrons;
+    }
+    
     /**
-     * Constructora de la classe.
+     * Funció que carrega els pesos de patrons en iniciar el programa: del fitxer indicat a la propietat
+     * del sistema "npc.pesos" o, si no n'hi ha, del recurs "pesos.bin" al costat d'aquesta classe.
+     * Si no en troba cap (o no es pot llegir) fa servir els pesos inicials d'AvaluacioPatrons.
+     * @return Avaluador de patrons.
      */
-    public Heuristica() {}
+    private static AvaluacioPatrons carregaPesos(){
+        
+        String fitxer = System.getProperty(PROPIETAT_PESOS);
+        try (InputStream in = (fitxer != null) ? new FileInputStream(fitxer) : Heuristica.class.getResourceAsStream(RECURS_PESOS)) {
+            if (in != null) return AvaluacioPatrons.carrega(in);
+        } catch (IOException e) {
+            System.err.println("No s'han pogut carregar els pesos (" + e.getMessage() + "), es fan servir els inicials");
+        }
+        
+        return new AvaluacioPatrons();
+    }
+    
+    /**
+     * Funció que retorna el pes estàtic d'una casella.
+     * @param casella Índex de bit de la casella (i + j*8).
+     * @return Pes de la casella a la taula de puntuacions.
+     */
+    static int pesCasella(int casella){
+        return taulaPuntuacions[casella & 7][casella >>> 3];
+    }
     
     /**
      * Funció que retorna un valor heurístic donat un tauler d'Othello i el jugador favorable.
@@ -45,6 +92,19 @@ public class Heuristica {
         return fHStaticWeigh(gs);
     }
     
+    /**
+     * Funció que retorna un valor heurístic donat un tauler de bits i el jugador favorable.
+     * @param tb Tauler de bits que representa una partida d'Othello.
+     * @param player Jugador favorable.
+     * @return Valor heurístic donat el tauler d'Othello i el jugador favorable
+     */
+    public int fHeuristica(TaulerBits tb, CellType player){
+        Jugador = player;
+        Contrari = CellType.opposite(Jugador);
+        long propies = tb.peces(Jugador), contraries = tb.peces(Contrari);
+        return patrons.avalua(propies, contraries) + fHMobilitat(propies, contraries);
+    }
+    
     /**
      * Funció heurística que utilitza una taula de pesos estàtics.
      * @param gs Tauler que representa una partida d'Othello.
@@ -64,6 +124,42 @@ public class Heuristica {
         return h;
     }
     
+    /**
+     * Funció heurística que utilitza la mobilitat (moviments legals de cada jugador) i la mobilitat potencial
+     * (caselles buides al costat de peces del contrari, és a dir, la frontera del contrari).
+     * Es calcula en temps constant a partir de les màscares de moviments, sense expandir cap tauler fill.
+     * @param propies Bitboard del jugador favorable.
+     * @param contraries Bitboard del contrari.
+     * @return Valor heurístic.
+     */
+    private int fHMobilitat(long propies, long contraries){
+        return patrons.getPesMobilitat() * mobilitat(propies, contraries) + patrons.getPesFrontera() * frontera(propies, contraries);
+    }
+    
+    /**
+     * Funció que retorna la diferència de mobilitat: moviments legals propis menys moviments legals del contrari.
+     * @param propies Bitboard del jugador favorable.
+     * @param contraries Bitboard del contrari.
+     * @return Diferència de mobilitat.
+     */
+    public static int mobilitat(long propies, long contraries){
+        return Long.bitCount(TaulerBits.generaMoviments(propies, contraries))
+             - Long.bitCount(TaulerBits.generaMoviments(contraries, propies));
+    }
+    
+    /**
+     * Funció que retorna la diferència de mobilitat potencial: caselles buides al costat de peces del contrari
+     * menys caselles buides al costat de peces pròpies.
+     * @param propies Bitboard del jugador favorable.
+     * @param contraries Bitboard del contrari.
+     * @return Diferència de mobilitat potencial.
+     */
+    public static int frontera(long propies, long contraries){
+        
+        long buides = ~(propies | contraries);
+        return Long.bitCount(TaulerBits.veines(contraries) & buides) - Long.bitCount(TaulerBits.veines(propies) & buides);
+    }
+    
     /**
      * Funció heurística que utilitza el nombre de peces que té en possesió cada jugador. 
      * @param gs Tauler que representa una partida d'Othello.
@@ -99,19 +195,19 @@ public class Heuristica {
             nouT.movePiece(mov.get(i)); g += nouT.getMoves().size();
         }
         
-        h = (10 * (S - g/S));
+        if(S > 0) h = (10 * (S - g/S));
         
         return h;
     }
     
     /**
-     * Funció heurística que retorna un nombre aleatori entre un rang.
+     * Funció heurística que retorna un nombre aleatori entre un rang. El generador té una llavor fixa, de manera
+     * que la seqüència de valors de cada instància és sempre la mateixa.
      * @return Valor heurístic.
      */
     private int fHRandom(){
         int MIN = -10, MAX = 10;
-        Random R = new Random();
-        return R.nextInt((MAX - MIN) + 1) + MIN;
+        return aleatori.nextInt((MAX - MIN) + 1) + MIN;
     }
     
     /**
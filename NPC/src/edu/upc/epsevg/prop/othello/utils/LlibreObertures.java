@@ -0,0 +1,213 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Classe que representa un llibre d'obertures guardat en un fitxer binari i llegit amb un MappedByteBuffer,
+ * de manera que es carrega a l'instant i no ocupa memòria del heap.
+ * El fitxer té una capçalera (MAGIC, VERSIO, nombre de registres i un enter reservat) i registres de 16 bytes
+ * ordenats per clau i moviment: clau (long), comptador (int), puntuació (short), moviment (byte) i un byte reservat.
+ * La clau és la de la forma canònica de la posició (Simetries.clauCanonica) i el moviment és la casella dins
+ * d'aquesta forma canònica, de manera que les 8 orientacions d'una posició comparteixen els registres. Si la forma
+ * canònica és simètrica, els moviments equivalents tenen un sol registre, el de Simetries.movimentCanonic.
+ * La puntuació és des del punt de vista del jugador que té el torn, en unitats d'avaluació, limitada a
+ * [PUNTUACIO_PERDUDA, PUNTUACIO_GUANYADA]. Els valors de sobre i de sota queden pels finals decidits
+ * (codificaPuntuacio), que conserven la diferència de peces: una victòria per 40 passa per davant d'una per 2.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class LlibreObertures {
+
+    /** Mida en bytes de la capçalera i de cada registre. */
+    public final static int MIDA_CAPCALERA = 16, MIDA_REGISTRE = 16;
+
+    /** Identificador i versió del format. */
+    public final static int MAGIC = 0x4E50434C, VERSIO = 1;
+
+    /** Límits de les puntuacions heurístiques; per sobre i per sota, victòries i derrotes més la diferència de peces. */
+    public final static int PUNTUACIO_GUANYADA = Short.MAX_VALUE - 64, PUNTUACIO_PERDUDA = Short.MIN_VALUE + 64;
+
+    private final static String PROPIETAT_LLIBRE = "npc.llibre";
+
+    private final MappedByteBuffer registres;
+    private final int n;
+    private int minComptador = 1;
+
+    /**
+     * Constructora que projecta el fitxer del llibre a memòria.
+     * @param fitxer Fitxer del llibre.
+     * @throws IOException Si no es pot llegir el fitxer o no té el format esperat.
+     */
+    public LlibreObertures(Path fitxer) throws IOException {
+
+        try (FileChannel canal = FileChannel.open(fitxer, StandardOpenOption.READ)) {
+            if (canal.size() < MIDA_CAPCALERA || canal.size() > Integer.MAX_VALUE)
+                throw new IOException("Mida de llibre no vàlida: " + canal.size());
+            registres = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+        if (registres.getInt(0) != MAGIC || registres.getInt(4) != VERSIO)
+            throw new IOException("El fitxer no és un llibre d'obertures (versió " + VERSIO + ")");
+        n = registres.getInt(8);
+        if ((long) MIDA_CAPCALERA + (long) n * MIDA_REGISTRE != registres.capacity())
+            throw new IOException("Llibre d'obertures truncat");
+    }
+
+    /**
+     * Funció que carrega el llibre indicat a la propietat del sistema "npc.llibre".
+     * Si no n'hi ha cap (o no es pot llegir) retorna null i el jugador cerca des de la primera tirada.
+     * @return Llibre d'obertures, o null.
+     */
+    public static LlibreObertures carregaPerDefecte() {
+
+        String fitxer = System.getProperty(PROPIETAT_LLIBRE);
+        if (fitxer == null) return null;
+        try {
+            return new LlibreObertures(Paths.get(fitxer));
+        } catch (IOException e) {
+            System.err.println("No s'ha pogut carregar el llibre d'obertures (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Funció que assigna el nombre mínim de partides que ha de tenir un moviment per jugar-lo des del llibre.
+     * Els moviments afegits només per cerca (comptador 0) es juguen sempre.
+     * @param minComptador Nombre mínim de partides.
+     */
+    public void setMinComptador(int minComptador) {
+        this.minComptador = minComptador;
+    }
+
+    /**
+     * Funció que retorna el nombre de registres del llibre.
+     * @return Nombre de registres.
+     */
+    public int getNumRegistres() {
+        return n;
+    }
+
+    /**
+     * Funció que retorna el moviment del llibre per una posició: el de millor puntuació entre els registres
+     * de la seva forma canònica, desfent la simetria. Comprova que el moviment sigui legal a la posició.
+     * @param tb Tauler de bits de la posició.
+     * @return Casella del moviment (índex de bit), o -1 si la posició no és al llibre.
+     */
+    public int consulta(TaulerBits tb) {
+
+        long p = tb.propies(), o = tb.contraries();
+        int s = Simetries.canonica(p, o);
+        long clau = TaulerBits.calculaHash(Simetries.transforma(p, s), Simetries.transforma(o, s), true);
+
+        int millor = -1, millorPuntuacio = Integer.MIN_VALUE;
+        for (int r = primerRegistre(clau); r < n && clau(r) == clau; r++) {
+            int comptador = comptador(r), puntuacio = puntuacio(r);
+            if (comptador != 0 && comptador < minComptador) continue;
+            if (puntuacio > millorPuntuacio) {
+                millor = moviment(r);
+                millorPuntuacio = puntuacio;
+            }
+        }
+        if (millor == -1) return -1;
+
+        int moviment = Simetries.transformaCasella(millor, Simetries.inversa(s));
+        return ((tb.moviments() & (1L << moviment)) != 0) ? moviment : -1;
+    }
+
+    /**
+     * Funció que cerca, amb cerca binària, el primer registre amb clau més gran o igual que la clau donada.
+     * @param clau Clau de la forma canònica.
+     * @return Índex del registre (n si no n'hi ha cap).
+     */
+    private int primerRegistre(long clau) {
+
+        int baix = 0, alt = n;
+        while (baix < alt) {
+            int mig = (baix + alt) >>> 1;
+            if (clau(mig) < clau) baix = mig + 1;
+            else                  alt = mig;
+        }
+
+        return baix;
+    }
+
+    /**
+     * Funció que retorna la clau del registre r.
+     * @param r Índex del registre.
+     * @return Clau.
+     */
+    private long clau(int r) {
+        return registres.getLong(MIDA_CAPCALERA + r * MIDA_REGISTRE);
+    }
+
+    /**
+     * Funció que retorna el comptador de partides del registre r.
+     * @param r Índex del registre.
+     * @return Comptador.
+     */
+    private int comptador(int r) {
+        return registres.getInt(MIDA_CAPCALERA + r * MIDA_REGISTRE + 8);
+    }
+
+    /**
+     * Funció que retorna la puntuació del registre r.
+     * @param r Índex del registre.
+     * @return Puntuació.
+     */
+    private int puntuacio(int r) {
+        return registres.getShort(MIDA_CAPCALERA + r * MIDA_REGISTRE + 12);
+    }
+
+    /**
+     * Funció que retorna el moviment (casella de la forma canònica) del registre r.
+     * @param r Índex del registre.
+     * @return Casella del moviment.
+     */
+    private int moviment(int r) {
+        return registres.get(MIDA_CAPCALERA + r * MIDA_REGISTRE + 14);
+    }
+
+    /**
+     * Funció que converteix un valor a l'escala de la cerca (MiniMax, on un final guanyat val VICTORIA més la
+     * diferència de peces) a la puntuació d'un registre. Els finals decidits van a PUNTUACIO_GUANYADA + diferència
+     * (o PUNTUACIO_PERDUDA + diferència) i la resta es limita a [PUNTUACIO_PERDUDA, PUNTUACIO_GUANYADA].
+     * @param valor Valor des del punt de vista del jugador que té el torn.
+     * @return Puntuació del registre.
+     */
+    public static short codificaPuntuacio(int valor) {
+
+        if (valor > MiniMax.VICTORIA) return (short) (PUNTUACIO_GUANYADA + Math.min(64, valor - MiniMax.VICTORIA));
+        if (valor < MiniMax.DERROTA)  return (short) (PUNTUACIO_PERDUDA + Math.max(-64, valor - MiniMax.DERROTA));
+
+        return (short) Math.max(PUNTUACIO_PERDUDA, Math.min(PUNTUACIO_GUANYADA, valor));
+    }
+
+    /**
+     * Funció que escriu la capçalera i els registres d'un llibre, que han d'estar ordenats per clau.
+     * @param fitxer Fitxer de sortida.
+     * @param claus Clau de cada registre.
+     * @param comptadors Comptador de cada registre.
+     * @param puntuacions Puntuació de cada registre.
+     * @param moviments Moviment de cada registre.
+     * @param n Nombre de registres.
+     * @throws IOException Si no es pot escriure el fitxer.
+     */
+    public static void escriu(Path fitxer, long[] claus, int[] comptadors, short[] puntuacions, byte[] moviments, int n) throws IOException {
+
+        ByteBuffer buffer = ByteBuffer.allocate(MIDA_CAPCALERA + n * MIDA_REGISTRE);
+        buffer.putInt(MAGIC).putInt(VERSIO).putInt(n).putInt(0);
+        for (int r = 0; r < n; r++)
+            buffer.putLong(claus[r]).putInt(comptadors[r]).putShort(puntuacions[r]).put(moviments[r]).put((byte) 0);
+        buffer.flip();
+
+        try (FileChannel canal = FileChannel.open(fitxer, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) canal.write(buffer);
+        }
+    }
+
+}
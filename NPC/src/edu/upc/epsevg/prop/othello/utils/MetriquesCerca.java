@@ -0,0 +1,222 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.FileWriter;
+import java.io.BufferedWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Classe que registra les mètriques de cada tirada i de cada iteració de la cerca i les escriu com a línies JSON
+ * (un objecte per línia, amb el camp "tipus" igual a "iteracio" o "tirada").
+ * Els cercadors només incrementen comptadors de tipus long durant la cerca; aquesta classe els llegeix en acabar
+ * cada iteració, en calcula les diferències i les taxes, i escriu totes les línies de la tirada de cop en acabar-la,
+ * de manera que el cost és de l'ordre de microsegons per iteració i es pot deixar sempre activat.
+ * Les línies de totes les instàncies van al mateix fitxer (propietat del sistema "npc.metriques"); cada tirada
+ * s'escriu sencera i es distingeix pel nom del cercador.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class MetriquesCerca {
+
+    /** Posició de cada comptador al vector que omplen els cercadors. */
+    public final static int NODES = 0, FULLES = 1, ENCERTS_TT = 2, TALLS_TT = 3, COLISIONS_TT = 4,
+                            TALLS = 5, TALLS_PRIMER = 6, TALLS_PROBCUT = 7, NUM_COMPTADORS = 8;
+
+    private final static String PROPIETAT_METRIQUES = "npc.metriques";
+    private final static long[] ZEROS = new long[NUM_COMPTADORS];
+    private static PrintWriter sortidaPerDefecte = null;
+
+    private final PrintWriter sortida;
+    private final String nom;
+    private final StringBuilder linies = new StringBuilder(4096);
+    private final long[] anteriors = new long[NUM_COMPTADORS];
+    private int tirada = 0, iteracions = 0, buides = 0;
+    private long iniciTirada = 0L, iniciIteracio = 0L, nodesIteracioAnterior = 0L;
+
+    /**
+     * Constructora de la classe.
+     * @param sortida On s'escriuen les línies JSON (null per no registrar res).
+     * @param nom Nom del cercador, que s'escriu a cada línia.
+     */
+    public MetriquesCerca(PrintWriter sortida, String nom) {
+        this.sortida = sortida;
+        this.nom = nom;
+    }
+
+    /**
+     * Funció que crea el registre de mètriques cap al fitxer de la propietat del sistema "npc.metriques"
+     * (s'hi afegeixen les línies). Si la propietat no hi és (o el fitxer no es pot obrir) no es registra res.
+     * @param nom Nom del cercador, que s'escriu a cada línia.
+     * @return Registre de mètriques.
+     */
+    public static MetriquesCerca perDefecte(String nom) {
+        return new MetriquesCerca(sortidaPerDefecte(), nom);
+    }
+
+    /**
+     * Funció que obre, només la primera vegada, el fitxer de la propietat "npc.metriques".
+     * @return Sortida compartida per totes les instàncies, o null.
+     */
+    private static synchronized PrintWriter sortidaPerDefecte() {
+
+        String fitxer = System.getProperty(PROPIETAT_METRIQUES);
+        if (sortidaPerDefecte == null && fitxer != null) {
+            try {
+                sortidaPerDefecte = new PrintWriter(new BufferedWriter(new FileWriter(fitxer, true)));
+            } catch (IOException e) {
+                System.err.println("No s'ha pogut obrir el fitxer de mètriques (" + e.getMessage() + ")");
+            }
+        }
+
+        return sortidaPerDefecte;
+    }
+
+    /**
+     * Funció que retorna si el registre està actiu.
+     * @return Cert si s'escriuen les mètriques.
+     */
+    public boolean actiu() {
+        return sortida != null;
+    }
+
+    /**
+     * Funció que comença una tirada. Els comptadors del cercador s'han d'haver posat a 0 abans.
+     * @param buides Nombre de caselles buides de la posició.
+     */
+    public void iniciaTirada(int buides) {
+
+        if (sortida == null) return;
+        tirada++;
+        this.buides = buides;
+        iteracions = 0;
+        linies.setLength(0);
+        Arrays.fill(anteriors, 0L);
+        nodesIteracioAnterior = 0L;
+        iniciTirada = iniciIteracio = System.nanoTime();
+    }
+
+    /**
+     * Funció que registra el final d'una iteració.
+     * @param prof Profunditat de la iteració (o caselles buides si és la resolució exacta del final).
+     * @param comptadors Comptadors acumulats de la tirada.
+     * @param completa Cert si la iteració s'ha acabat (fals si s'ha aturat per temps).
+     * @param moviment Millor moviment de la iteració (-1 si no n'hi ha).
+     * @param valor Valor del millor moviment.
+     */
+    public void iteracio(int prof, long[] comptadors, boolean completa, int moviment, int valor) {
+
+        if (sortida == null) return;
+        long ara = System.nanoTime(), ns = ara - iniciIteracio;
+        long nodes = comptadors[NODES] - anteriors[NODES];
+
+        linies.append("{\"tipus\":\"iteracio\",\"cercador\":\"").append(nom)
+              .append("\",\"tirada\":").append(tirada)
+              .append(",\"prof\":").append(prof)
+              .append(",\"completa\":").append(completa)
+              .append(",\"ms\":").append(format(ns / 1e6));
+        camps(comptadors, anteriors, ns);
+        linies.append(",\"ramificacio\":").append(format(nodesIteracioAnterior > 0 ? (double) nodes / nodesIteracioAnterior : 0.0));
+        if (moviment >= 0) {
+            linies.append(",\"moviment\":\""); casella(moviment); linies.append("\",\"valor\":").append(valor);
+        }
+        linies.append("}\n");
+
+        iteracions++;
+        nodesIteracioAnterior = nodes;
+        System.arraycopy(comptadors, 0, anteriors, 0, NUM_COMPTADORS);
+        iniciIteracio = ara;
+    }
+
+    /**
+     * Funció que acaba la tirada: afegeix la línia de resum i escriu totes les línies de la tirada.
+     * @param prof Profunditat assolida.
+     * @param comptadors Comptadors acumulats de la tirada.
+     * @param moviment Moviment triat (-1 si no n'hi ha).
+     * @param font D'on surt el moviment ("cerca", "final" o "llibre").
+     */
+    public void acabaTirada(int prof, long[] comptadors, int moviment, String font) {
+
+        if (sortida == null) return;
+        long ns = System.nanoTime() - iniciTirada;
+
+        linies.append("{\"tipus\":\"tirada\",\"cercador\":\"").append(nom)
+              .append("\",\"tirada\":").append(tirada)
+              .append(",\"buides\":").append(buides)
+              .append(",\"font\":\"").append(font)
+              .append("\",\"prof\":").append(prof)
+              .append(",\"iteracions\":").append(iteracions)
+              .append(",\"ms\":").append(format(ns / 1e6));
+        camps(comptadors, ZEROS, ns);
+        if (moviment >= 0) {
+            linies.append(",\"moviment\":\""); casella(moviment); linies.append('"');
+        }
+        linies.append("}\n");
+
+        synchronized (sortida) {
+            sortida.print(linies);
+            sortida.flush();
+        }
+    }
+
+    /**
+     * Funció que registra una tirada treta del llibre d'obertures, sense cerca.
+     * @param buides Nombre de caselles buides de la posició.
+     * @param moviment Moviment del llibre.
+     */
+    public void tiradaLlibre(int buides, int moviment) {
+
+        if (sortida == null) return;
+        iniciaTirada(buides);
+        acabaTirada(0, ZEROS, moviment, "llibre");
+    }
+
+    /**
+     * Funció que afegeix els camps comuns (nodes, velocitat i taxes) de l'interval entre dues lectures dels comptadors.
+     * @param comptadors Comptadors actuals.
+     * @param abans Comptadors a l'inici de l'interval.
+     * @param ns Durada de l'interval en nanosegons.
+     */
+    private void camps(long[] comptadors, long[] abans, long ns) {
+
+        long nodes = comptadors[NODES] - abans[NODES], fulles = comptadors[FULLES] - abans[FULLES];
+        long talls = comptadors[TALLS] - abans[TALLS];
+        linies.append(",\"nodes\":").append(nodes)
+              .append(",\"fulles\":").append(fulles)
+              .append(",\"nodesPerSegon\":").append(ns > 0 ? (long) (nodes * 1e9 / ns) : 0L)
+              .append(",\"encertsTT\":").append(format(taxa(comptadors[ENCERTS_TT] - abans[ENCERTS_TT], nodes)))
+              .append(",\"tallsTT\":").append(format(taxa(comptadors[TALLS_TT] - abans[TALLS_TT], nodes)))
+              .append(",\"colisionsTT\":").append(format(taxa(comptadors[COLISIONS_TT] - abans[COLISIONS_TT], nodes)))
+              .append(",\"talls\":").append(format(taxa(talls, nodes - fulles)))
+              .append(",\"tallPrimer\":").append(format(taxa(comptadors[TALLS_PRIMER] - abans[TALLS_PRIMER], talls)))
+              .append(",\"tallsProbCut\":").append(format(taxa(comptadors[TALLS_PROBCUT] - abans[TALLS_PROBCUT], nodes - fulles)));
+    }
+
+    /**
+     * Funció que afegeix una casella en notació de transcripció ("f5").
+     * @param casella Índex de bit de la casella.
+     */
+    private void casella(int casella) {
+        linies.append((char) ('a' + (casella & 7))).append((char) ('1' + (casella >>> 3)));
+    }
+
+    /**
+     * Funció que retorna una proporció, o 0 si el denominador és 0.
+     * @param part Numerador.
+     * @param total Denominador.
+     * @return Proporció.
+     */
+    private static double taxa(long part, long total) {
+        return (total > 0) ? (double) part / total : 0.0;
+    }
+
+    /**
+     * Funció que escriu un nombre real amb 3 decimals i punt decimal, com espera el JSON.
+     * @param x Nombre.
+     * @return Text del nombre.
+     */
+    private static String format(double x) {
+        return String.format(Locale.ROOT, "%.3f", x);
+    }
+
+}
@@ -1,195 +1,335 @@
 package edu.upc.epsevg.prop.othello.utils;
 
-import java.awt.Point;
-import java.util.Random;
-import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import edu.upc.epsevg.prop.othello.Move;
 import edu.upc.epsevg.prop.othello.CellType;
 import edu.upc.epsevg.prop.othello.SearchType;
 
 /**
  * Classe que implement l'algorisme miniMax amb profunditat limitada.
+ * La taula de transposició guarda el valor heurístic de les fulles, que es reaprofita, i el millor moviment dels
+ * nodes interiors i de l'arrel, que s'explora primer quan el node es torna a cercar (per exemple, a la tirada següent).
  * @author Omar Briqa, Joaquim Hervas
  */
 public class MiniMax {
 
     private final Heuristica H;
-    private final BaseDades BD;
-    private static long[][][] taulaClaus;
+    private final TaulaTransposicio TT;
+    private final TaulerBits tauler;
+    private final OrdenacioMoviments ordenacio;
     private CellType Jugador = CellType.EMPTY;
-    private final int VICTORIA = 100000, DERROTA = -100000;
-    private long NUM_NODES = 0L, HEURISTIQUES_REUTILITZADES = 0L;
-    private int PROFUNDITAT_MAXIMA = 0, PROF_ASSOLIDA = 0, COLISIONS = 0;
+    private long clauJugador = 0L;
+    public final static int VICTORIA = 100000, DERROTA = -100000;
+    private long NUM_NODES = 0L, HEURISTIQUES_REUTILITZADES = 0L, NODES_VISITATS = 0L, TALLS = 0L, TALLS_PRIMER = 0L, COLISIONS = 0L;
+    private int PROFUNDITAT_MAXIMA = 0, PROF_ASSOLIDA = 0, valorArrel = 0;
+    private int minBuidesSimetria = Simetries.minBuidesPerDefecte();
+    private final static int MIDA_TAULA_MB = 64;
+    private final static AtomicInteger INSTANCIES = new AtomicInteger();
+    private final MetriquesCerca metriques = MetriquesCerca.perDefecte("NPCMiniMax#" + INSTANCIES.incrementAndGet());
+    private final long[] comptadors = new long[MetriquesCerca.NUM_COMPTADORS];
 
     /**
      * Constructora de la classe.
      * @param prof Profunditat límit fins a on l'algorisme pot cercar.
      */
     public MiniMax(int prof) {
+        this(prof, MIDA_TAULA_MB);
+    }
+    
+    /**
+     * Constructora de la classe amb la mida de la taula de transposició.
+     * @param prof Profunditat límit fins a on l'algorisme pot cercar.
+     * @param midaTaulaMB Mida de la taula de transposició en MB.
+     */
+    public MiniMax(int prof, int midaTaulaMB) {
         H = new Heuristica();
-        BD = new BaseDades();
+        TT = new TaulaTransposicio(midaTaulaMB);
+        tauler = new TaulerBits(0L, 0L, true);
+        ordenacio = new OrdenacioMoviments();
         PROFUNDITAT_MAXIMA = prof;
-        taulaClaus = generaTaulaAlaetoria();
     }
 
     /**
      * Funció que retorna el millor moviment de tots els possibles aplicant l'algorisme miniMax
-     * @param gs Tauler que representa la partida d'Othello.
+     * @param tb Tauler de bits que representa la partida d'Othello.
      * @param player Jugador a qui li toca tirar.
      * @return Millor moviment on es pot posar una peça segons l'algorisme miniMax.
      */
-    public Move miniMax(GameStatusNPC gs, CellType player) {
+    public Move miniMax(TaulerBits tb, CellType player) {
 
         Move movTirar;
         Jugador = player;
+        clauJugador = (player == CellType.PLAYER1) ? 0L : TaulaTransposicio.CLAU_PERSPECTIVA;
 
         int cActual = Integer.MIN_VALUE;
         int alpha   = Integer.MIN_VALUE;
         int beta    = Integer.MAX_VALUE;
 
-        if (!gs.getMoves().isEmpty())   movTirar = new Move(gs.getMoves().get(0), 0L, 0, SearchType.MINIMAX);
-        else                            movTirar = null;
+        tauler.copia(tb);
+        ordenacio.novaCerca();
+        TT.novaCerca();
+        NUM_NODES = HEURISTIQUES_REUTILITZADES = NODES_VISITATS = TALLS = TALLS_PRIMER = COLISIONS = 0L;
+        PROF_ASSOLIDA = 0;
+        metriques.iniciaTirada(tauler.buides());
+        long movPossibles = tauler.moviments();
+        if (movPossibles != 0)  movTirar = new Move(TaulerBits.punt(Long.numberOfTrailingZeros(movPossibles)), 0L, 0, SearchType.MINIMAX);
+        else                    movTirar = null;
         
-
-        ArrayList<Point> movPossibles = gs.getMoves();
-        for (Point moviment : movPossibles) {
-            GameStatusNPC nouT = new GameStatusNPC(gs);
-            nouT.movePiece(moviment);
-            int fH = MinValor(nouT, 1, alpha, beta);
+        int simetria = Simetries.simetria(tauler, minBuidesSimetria);
+        long hashTauler = Simetries.clau(tauler, simetria) ^ clauJugador;
+        int millorMov = TaulaTransposicio.SENSE_MOVIMENT;
+        int n = ordenacio.ordena(movPossibles, movimentTT(TT.consulta(hashTauler), simetria), 0);
+        for (int k = 0; k < n; k++) {
+            int moviment = ordenacio.moviment(0, k);
+            long girades = tauler.fesMoviment(moviment);
+            int fH = MinValor(1, alpha, beta);
+            tauler.desfesMoviment(moviment, girades);
             if (fH > cActual) {
-                cActual = fH;
-                movTirar = new Move(moviment, NUM_NODES,
+                cActual = fH; millorMov = moviment;
+                movTirar = new Move(TaulerBits.punt(moviment), NUM_NODES,
                                               PROF_ASSOLIDA, SearchType.MINIMAX);
             }
+            alpha = Math.max(alpha, cActual);
         }
+        if (millorMov != TaulaTransposicio.SENSE_MOVIMENT)
+            TT.guarda(hashTauler, PROFUNDITAT_MAXIMA, TaulaTransposicio.EXACTA, cActual, Simetries.transformaMoviment(millorMov, simetria));
 
+        valorArrel = cActual;
+        int moviment = (movTirar != null) ? TaulerBits.casella(movTirar.getTo()) : -1;
+        metriques.iteracio(PROFUNDITAT_MAXIMA, comptadors(), true, moviment, cActual);
+        metriques.acabaTirada(PROF_ASSOLIDA, comptadors(), moviment, "cerca");
         return movTirar;
     }
     
     /**
-     * Funció que retorna la heurística mínima de tots els estats següents possibles a l'estat indicat en el tauler gs.
-     * @param gs Tauler que representa una partida d'Othello.
+     * Funció que retorna el valor heurístic del millor moviment de la darrera cerca, pel jugador que tirava.
+     * @return Valor del millor moviment (Integer.MIN_VALUE si no hi havia cap moviment).
+     */
+    public int getValor() {
+        return valorArrel;
+    }
+    
+    /**
+     * Funció que activa les claus simètriques de la memòria de fulles a les posicions amb com a mínim minBuides
+     * caselles buides, de manera que les 8 orientacions d'una fulla comparteixen el valor heurístic.
+     * Per defecte, el valor de la propietat del sistema "npc.simetries".
+     * @param minBuides Mínim de caselles buides (Simetries.SENSE_SIMETRIES per desactivar-les).
+     */
+    public void setSimetries(int minBuides) {
+        minBuidesSimetria = minBuides;
+    }
+    
+    /**
+     * Funció que buida la taula de transposició perquè la cerca següent no reaprofiti cap valor guardat.
+     */
+    public void buidaTaula() {
+        TT.buida();
+    }
+    
+    /**
+     * Funció que retorna el nombre de nodes fulla avaluats a la darrera cerca.
+     * @return Nombre de nodes explorats.
+     */
+    public long getNodesExplorats() {
+        return NUM_NODES;
+    }
+    
+    /**
+     * Funció que retorna els comptadors de la darrera cerca en l'ordre que espera MetriquesCerca.
+     * Aquí els valors de la taula només es reaprofiten a les fulles (als nodes interiors només se'n fa servir el moviment
+     * per ordenar) i tot encert es reaprofita, per tant encerts i talls per taula coincideixen.
+     * @return Vector de comptadors (sempre el mateix objecte).
+     */
+    private long[] comptadors() {
+        
+        comptadors[MetriquesCerca.NODES] = NODES_VISITATS;
+        comptadors[MetriquesCerca.FULLES] = NUM_NODES;
+        comptadors[MetriquesCerca.ENCERTS_TT] = HEURISTIQUES_REUTILITZADES;
+        comptadors[MetriquesCerca.TALLS_TT] = HEURISTIQUES_REUTILITZADES;
+        comptadors[MetriquesCerca.COLISIONS_TT] = COLISIONS;
+        comptadors[MetriquesCerca.TALLS] = TALLS;
+        comptadors[MetriquesCerca.TALLS_PRIMER] = TALLS_PRIMER;
+        
+        return comptadors;
+    }
+    
+    /**
+     * Funció que retorna, per la darrera cerca, la proporció de nodes amb tall on el tall l'ha provocat
+     * el primer moviment explorat. Com més a prop d'1, millor és l'ordenació.
+     * @return Taxa de talls al primer moviment (0 si no hi ha hagut cap tall).
+     */
+    public double getTaxaTallPrimer() {
+        
+        long talls = ordenacio.getNodesTallats();
+        return (talls == 0) ? 0.0 : (double) ordenacio.getTallsPrimer() / talls;
+    }
+    
+    /**
+     * Funció que retorna la heurística mínima de tots els estats següents possibles a l'estat actual del tauler de cerca.
      * @param prof Profunditat actual en la que está la funció MinValor.
      * @param alpha Paràmetre alfa que s'utiliza en la poda alfa-beta.
      * @param beta Paràmetre alfa que s'utiliza en la poda alfa-beta.
-     * @return Heurística mínima de tots els estats següents possibles a l'estat indicat en el Tauler gs.
+     * @return Heurística mínima de tots els estats següents possibles a l'estat actual del tauler de cerca.
      */
-    private int MinValor(GameStatusNPC gs, int prof, int alpha, int beta) {
+    private int MinValor(int prof, int alpha, int beta) {
 
         int cActual = Integer.MAX_VALUE;
+        long moviments = tauler.moviments();
+        NODES_VISITATS++;
 
-        if (gs.checkGameOver())
-            cActual = costFinalPartida(gs);
+        if (moviments == 0 && tauler.finalPartida())
+            cActual = costFinalPartida(tauler);
         
-        else if (prof == PROFUNDITAT_MAXIMA || gs.getMoves().isEmpty()) {
+        else if (prof == PROFUNDITAT_MAXIMA) {
             NUM_NODES++;
-            long hashTauler = hashValue(gs);
-            if (BD.hiEsH(hashTauler))
-                cActual = BD.valorH(hashTauler);
+            long hashTauler = Simetries.clau(tauler, Simetries.simetria(tauler, minBuidesSimetria)) ^ clauJugador;
+            long entrada = TT.consulta(hashTauler);
+            if (entrada != 0 && TaulaTransposicio.profunditat(entrada) == 0) {
+                HEURISTIQUES_REUTILITZADES++; cActual = TaulaTransposicio.valor(entrada);
+            }
             else {
-                cActual = H.fHeuristica(gs, Jugador);
-                BD.afegirH(hashTauler, cActual);
+                if (entrada == 0 && TT.colisio(hashTauler)) COLISIONS++;
+                cActual = H.fHeuristica(tauler, Jugador);
+                TT.guarda(hashTauler, 0, TaulaTransposicio.EXACTA, cActual, TaulaTransposicio.SENSE_MOVIMENT);
             }
         }
         
+        else if (moviments == 0) {
+            tauler.passa();
+            cActual = MaxValor(prof + 1, alpha, beta);
+            tauler.passa();
+        }
+        
         else {
-            ArrayList<Point> movPossibles = gs.getMoves();
-            for (Point moviment : movPossibles) {
-                GameStatusNPC nouT = new GameStatusNPC(gs);
-                nouT.movePiece(moviment); PROF_ASSOLIDA = prof + 1;
-                int fHMAX = MaxValor(nouT, prof + 1, alpha, beta);
-                cActual = Math.min(cActual, fHMAX);
-                beta = Math.min(cActual, beta); if (alpha >= beta) break;
+            int simetria = Simetries.simetria(tauler, minBuidesSimetria);
+            long hashTauler = Simetries.clau(tauler, simetria) ^ clauJugador;
+            int alphaInicial = alpha, betaInicial = beta, millorMov = TaulaTransposicio.SENSE_MOVIMENT;
+            int n = ordenacio.ordena(moviments, movimentTT(TT.consulta(hashTauler), simetria), prof);
+            for (int k = 0; k < n; k++) {
+                int moviment = ordenacio.moviment(prof, k);
+                long girades = tauler.fesMoviment(moviment); PROF_ASSOLIDA = prof + 1;
+                int fHMAX = MaxValor(prof + 1, alpha, beta);
+                tauler.desfesMoviment(moviment, girades);
+                if (fHMAX < cActual) { cActual = fHMAX; millorMov = moviment; }
+                beta = Math.min(cActual, beta);
+                if (alpha >= beta) {
+                    TALLS++; if (k == 0) TALLS_PRIMER++;
+                    ordenacio.tall(prof, moviment, PROFUNDITAT_MAXIMA - prof, k); break;
+                }
             }
+            TT.guarda(hashTauler, PROFUNDITAT_MAXIMA - prof, tipusCota(cActual, alphaInicial, betaInicial), cActual,
+                      Simetries.transformaMoviment(millorMov, simetria));
         }
 
         return cActual;
     }
 
     /**
-     * Funció que retorna la heurística máxima de tots els estats següents possibles a l'estat indicat en el tauler gs.
-     * @param gs Tauler que representa una partida d'Othello.
+     * Funció que retorna la heurística máxima de tots els estats següents possibles a l'estat actual del tauler de cerca.
      * @param prof Profunditat actual en la que está la funció MaxValor.
      * @param alpha Paràmetre alfa que s'utiliza en la poda alfa-beta.
      * @param beta Paràmetre alfa que s'utiliza en la poda alfa-beta.
-     * @return Heurística màxima de tots els estats següents possibles a l'estat indicat en el tauler gs.
+     * @return Heurística màxima de tots els estats següents possibles a l'estat actual del tauler de cerca.
      */
-    private int MaxValor(GameStatusNPC gs, int prof, int alpha, int beta) {
+    private int MaxValor(int prof, int alpha, int beta) {
 
         int cActual = Integer.MIN_VALUE;
+        long moviments = tauler.moviments();
+        NODES_VISITATS++;
 
-        if (gs.checkGameOver())
-            cActual = costFinalPartida(gs);
+        if (moviments == 0 && tauler.finalPartida())
+            cActual = costFinalPartida(tauler);
         
-        else if (prof == PROFUNDITAT_MAXIMA || gs.getMoves().isEmpty()) {
+        else if (prof == PROFUNDITAT_MAXIMA) {
             NUM_NODES++;
-            long hashTauler = hashValue(gs);
-            if (BD.hiEsH(hashTauler))
-                cActual = BD.valorH(hashTauler);
+            long hashTauler = Simetries.clau(tauler, Simetries.simetria(tauler, minBuidesSimetria)) ^ clauJugador;
+            long entrada = TT.consulta(hashTauler);
+            if (entrada != 0 && TaulaTransposicio.profunditat(entrada) == 0) {
+                HEURISTIQUES_REUTILITZADES++; cActual = TaulaTransposicio.valor(entrada);
+            }
             else {
-                cActual = H.fHeuristica(gs, Jugador);
-                BD.afegirH(hashTauler, cActual);
+                if (entrada == 0 && TT.colisio(hashTauler)) COLISIONS++;
+                cActual = H.fHeuristica(tauler, Jugador);
+                TT.guarda(hashTauler, 0, TaulaTransposicio.EXACTA, cActual, TaulaTransposicio.SENSE_MOVIMENT);
             }
         } 
+        
+        else if (moviments == 0) {
+            tauler.passa();
+            cActual = MinValor(prof + 1, alpha, beta);
+            tauler.passa();
+        }
+        
         else {
-            ArrayList<Point> movPossibles = gs.getMoves();
-            for (Point moviment : movPossibles) {
-                GameStatusNPC nouT = new GameStatusNPC(gs);
-                nouT.movePiece(moviment); PROF_ASSOLIDA = prof + 1;
-                int fHMIN = MinValor(nouT, prof + 1, alpha, beta);
-                cActual = Math.max(cActual, fHMIN); 
-                alpha = Math.max(cActual, alpha); if (alpha >= beta) break;
+            int simetria = Simetries.simetria(tauler, minBuidesSimetria);
+            long hashTauler = Simetries.clau(tauler, simetria) ^ clauJugador;
+            int alphaInicial = alpha, betaInicial = beta, millorMov = TaulaTransposicio.SENSE_MOVIMENT;
+            int n = ordenacio.ordena(moviments, movimentTT(TT.consulta(hashTauler), simetria), prof);
+            for (int k = 0; k < n; k++) {
+                int moviment = ordenacio.moviment(prof, k);
+                long girades = tauler.fesMoviment(moviment); PROF_ASSOLIDA = prof + 1;
+                int fHMIN = MinValor(prof + 1, alpha, beta);
+                tauler.desfesMoviment(moviment, girades);
+                if (fHMIN > cActual) { cActual = fHMIN; millorMov = moviment; }
+                alpha = Math.max(cActual, alpha);
+                if (alpha >= beta) {
+                    TALLS++; if (k == 0) TALLS_PRIMER++;
+                    ordenacio.tall(prof, moviment, PROFUNDITAT_MAXIMA - prof, k); break;
+                }
             }
+            TT.guarda(hashTauler, PROFUNDITAT_MAXIMA - prof, tipusCota(cActual, alphaInicial, betaInicial), cActual,
+                      Simetries.transformaMoviment(millorMov, simetria));
         }
 
         return cActual;
     }
 
     /**
-     * Funció que retorna un valor gran en funció si ets guanyador o perdedor de la partida.
-     * @param gs Tauler que representa una partida d'Othello.
-     * @return Valor que representa la victoria o derrota del jugador.
+     * Funció que retorna el millor moviment guardat a una entrada de la taula, a l'orientació del tauler actual.
+     * @param entrada Dades empaquetades de l'entrada (0 si no n'hi ha).
+     * @param simetria Simetria amb la que s'ha calculat la clau.
+     * @return Índex de bit del moviment o TaulaTransposicio.SENSE_MOVIMENT.
      */
-    private int costFinalPartida(GameStatusNPC gs) {
-        return ((gs.GetWinner() == Jugador) ? VICTORIA : DERROTA);
+    private int movimentTT(long entrada, int simetria) {
+        
+        if (entrada == 0) return TaulaTransposicio.SENSE_MOVIMENT;
+        int moviment = TaulaTransposicio.moviment(entrada);
+        return (simetria > 0) ? Simetries.transformaMoviment(moviment, Simetries.inversa(simetria)) : moviment;
     }
-
+    
     /**
-     * Funció que retorna una taula de 2x8x8 de nombres aleatoris de tipus Long.
-     * @return Taula de 2x8x8 de nombres aleatoris de tipus Long.
+     * Funció que retorna el tipus de cota que representa un valor respecte a la finestra alfa-beta amb la que s'ha cercat.
+     * @param valor Valor obtingut.
+     * @param alpha Valor d'alfa en entrar al node.
+     * @param beta Valor de beta en entrar al node.
+     * @return SUPERIOR si valor &lt;= alfa, INFERIOR si valor &gt;= beta, EXACTA en cas contrari.
      */
-    private long[][][] generaTaulaAlaetoria() {
-
-        Random R = new Random();
-        long[][][] taula = new long[2][8][8];
-        for (int k = 0; k < 2; k++) {
-            for (int i = 0; i < 8; i++) {
-                for (int j = 0; j < 8; j++) {
-                    taula[k][i][j] = R.nextLong();
-                }
-            }
-        }
+    private int tipusCota(int valor, int alpha, int beta) {
         
-        return taula;
+        if (valor <= alpha)     return TaulaTransposicio.SUPERIOR;
+        else if (valor >= beta) return TaulaTransposicio.INFERIOR;
+        else                    return TaulaTransposicio.EXACTA;
     }
 
     /**
-     * Funció que retorna del valor de hash Zobrist que representa el tauler gs.
-     * @param gs Tauler que representa una partida d'Othello.
-     * @return Valor de hash Zobrist que representa el tauler gs.
+     * Funció que retorna un valor gran en funció si ets guanyador o perdedor de la partida, més la diferència de peces.
+     * @param tb Tauler de bits que representa una partida d'Othello.
+     * @return Valor que representa la victoria o derrota del jugador (0 en cas d'empat).
      */
-    private long hashValue(GameStatusNPC gs) {
-        
-        long h = 0;
-        for(int i = 0; i < 8; i++){
-            for(int j = 0; j < 8; j++){
-                if(gs.getPosOccupied(i, j)){
-                    h = h ^ (taulaClaus[gs.getPosColor(i, j)][i][j]);
-                }
-            }
-        }
-        
-        return h;
+    private int costFinalPartida(TaulerBits tb) {
+        return valorFinal(Long.bitCount(tb.peces(Jugador)) - Long.bitCount(tb.peces(CellType.opposite(Jugador))));
+    }
+
+    /**
+     * Funció que converteix la diferència de peces d'una partida acabada a l'escala dels valors de la cerca.
+     * @param diferencia Diferència de peces pel jugador.
+     * @return VICTORIA o DERROTA més la diferència (0 en cas d'empat).
+     */
+    public static int valorFinal(int diferencia) {
+        if (diferencia > 0)         return VICTORIA + diferencia;
+        else if (diferencia < 0)    return DERROTA + diferencia;
+        else                        return 0;
     }
 
 }
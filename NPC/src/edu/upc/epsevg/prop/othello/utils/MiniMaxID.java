@@ -1,9 +1,11 @@
 package edu.upc.epsevg.prop.othello.utils;
 
-import java.awt.Point;
-import java.util.Random;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.upc.epsevg.prop.othello.Move;
 import edu.upc.epsevg.prop.othello.CellType;
@@ -14,20 +16,53 @@ import edu.upc.epsevg.prop.othello.players.npc.PlayerID;
  * Classe que implement l'algorisme miniMax limitat en temps per a cada tirada.
  * @author Omar Briqa, Joaquim Hervás
  */
-public class MiniMaxID {
+public class MiniMaxID implements AutoCloseable {
     
     private final Heuristica H;
-    private final BaseDades BD;
+    private final TaulaTransposicio TT;
     private long NUM_NODES = 0L;
     private final PlayerID playerIDS;
-    private static long TIMELIMIT = 0L;
-    private static long[][][] taulaClaus;
+    private final TaulerBits tauler;
+    private final OrdenacioMoviments ordenacio;
+    private boolean aturat = false;
+    private volatile boolean aturadaAjudant = false;
+    private final GestorTemps temps;
     private CellType Jugador = CellType.EMPTY;
+    private long clauJugador = 0L;
     private int PROF_ASSOLIDA = 0, PROFUNDITAT_MAXIMA = 0;
     private final int VICTORIA = 100000, DERROTA = -100000;
-    private long HEURISTIQUES_REUTILITZADES = 0L, COLISIONS = 0;
+    private long HEURISTIQUES_REUTILITZADES = 0L, COLISIONS = 0L, NODES_VISITATS = 0L, ENCERTS_TT = 0L, TALLS = 0L, TALLS_PRIMER = 0L, TALLS_PROBCUT = 0L;
+    private final static int MIDA_TAULA_MB = 64, FINESTRA_ASPIRACIO = 8, PROF_PREVIA_FINAL = 4, MARGE_GUANYADOR = 2;
+    private final static double FRACCIO_FINAL = 0.5;
+    private TipusCerca tipusCerca = TipusCerca.ALFA_BETA;
+    private SolucionadorFinal finals = null;
+    private boolean nomesGuanyador = false;
+    private boolean ponderat = false;
+    private int llindarFinal = 16, llindarGuanyador = 16 + MARGE_GUANYADOR;
+    private int limitProfunditat = 0, profCompletada = 0, valorArrel = 0;
+    private long limitNodes = Long.MAX_VALUE;
+    private int minBuidesSimetria = Simetries.minBuidesPerDefecte();
+    private ProbCut probCut = null;
+    private final static int SENSE_TALL = Integer.MIN_VALUE;
+    
+    private final MiniMaxID[] ajudants;
+    private final ExecutorService fils;
+    private final MetriquesCerca metriques;
+    private final long[] comptadors = new long[MetriquesCerca.NUM_COMPTADORS];
+    private final static AtomicInteger INSTANCIES = new AtomicInteger();
 
 
+    /**
+     * Constructora de la classe per cercar sense jugador ni límit de temps (per exemple, per analitzar posicions).
+     * La cerca s'atura pels límits de profunditat o de nodes (setLimits), que s'han d'indicar.
+     * @param midaTaulaMB Mida de la taula de transposició en MB.
+     * @param nFils Nombre de fils de cerca (1 per a la cerca seqüencial).
+     */
+    public MiniMaxID(int midaTaulaMB, int nFils) {
+        this(null, CellType.EMPTY, new TaulaTransposicio(midaTaulaMB), new GestorTemps(GestorTemps.SENSE_LIMIT, () -> false), nFils,
+             MetriquesCerca.perDefecte("MiniMaxID#" + INSTANCIES.incrementAndGet()));
+    }
+    
     /**
      * Constructora de la classe
      * @param aThis Referencia a la classe que representa al jugador que utilitza aquest algorisme.
@@ -35,199 +70,945 @@ public class MiniMaxID {
      * @param timeout Temps límit per a cada tirada.
      */
     public MiniMaxID(PlayerID aThis, CellType player, long timeout) {
+        this(aThis, player, timeout, MIDA_TAULA_MB);
+    }
+    
+    /**
+     * Constructora de la classe amb la mida de la taula de transposició.
+     * @param aThis Referencia a la classe que representa al jugador que utilitza aquest algorisme.
+     * @param player Jugador favorable.
+     * @param timeout Temps límit per a cada tirada.
+     * @param midaTaulaMB Mida de la taula de transposició en MB.
+     */
+    public MiniMaxID(PlayerID aThis, CellType player, long timeout, int midaTaulaMB) {
+        this(aThis, player, timeout, midaTaulaMB, 1);
+    }
+    
+    /**
+     * Constructora de la classe per a la cerca en paral·lel.
+     * Amb més d'un fil, el primer moviment de l'arrel es cerca en aquest fil i la resta es reparteixen
+     * entre els fils, cadascun amb el seu propi cercador i tots amb la mateixa taula de transposició.
+     * @param aThis Referencia a la classe que representa al jugador que utilitza aquest algorisme.
+     * @param player Jugador favorable.
+     * @param timeout Temps límit per a cada tirada.
+     * @param midaTaulaMB Mida de la taula de transposició en MB.
+     * @param nFils Nombre de fils de cerca (1 per a la cerca seqüencial).
+     */
+    public MiniMaxID(PlayerID aThis, CellType player, long timeout, int midaTaulaMB, int nFils) {
+        this(aThis, player, new TaulaTransposicio(midaTaulaMB), new GestorTemps(timeout, aThis::tempsAcabat), nFils,
+             MetriquesCerca.perDefecte(aThis.getName() + "#" + INSTANCIES.incrementAndGet()));
+    }
+    
+    /**
+     * Constructora de la classe a partir d'una taula de transposició i un gestor de temps que es comparteixen amb els ajudants.
+     * @param aThis Referencia a la classe que representa al jugador que utilitza aquest algorisme.
+     * @param player Jugador favorable.
+     * @param taula Taula de transposició.
+     * @param gestor Gestor del temps de cada tirada.
+     * @param nFils Nombre de fils de cerca (1 per a la cerca seqüencial).
+     * @param registre Registre de mètriques de cada tirada (els ajudants no en tenen).
+     */
+    private MiniMaxID(PlayerID aThis, CellType player, TaulaTransposicio taula, GestorTemps gestor, int nFils, MetriquesCerca registre) {
         
         playerIDS = aThis;
-        TIMELIMIT = timeout;
+        temps = gestor;
+        metriques = registre;
         H = new Heuristica();
-        BD = new BaseDades();
-        taulaClaus = generaTaulaAlaetoria();
+        TT = taula;
+        tauler = new TaulerBits(0L, 0L, true);
+        ordenacio = new OrdenacioMoviments();
+        
+        if (nFils > 1) {
+            ajudants = new MiniMaxID[nFils - 1];
+            for (int k = 0; k < ajudants.length; k++)
+                ajudants[k] = new MiniMaxID(aThis, player, taula, gestor, 1, null);
+            fils = Executors.newFixedThreadPool(ajudants.length, r -> {
+                Thread t = new Thread(r, "MiniMaxID-ajudant"); t.setDaemon(true); return t;
+            });
+        } else {
+            ajudants = null;
+            fils = null;
+        }
         
     }
 
-    
     /**
      * Funció que retorna el millor moviment de tots els possibles aplicant l'algorisme miniMax
-     * @param gs Tauler que representa la partida d'Othello.
+     * @param tb Tauler de bits que representa la partida d'Othello.
      * @param player Jugador a qui li toca tirar.
      * @return Millor moviment on es pot posar una peça segons l'algorisme miniMax.
      */
-    public Move miniMaxID(GameStatusNPC gs, CellType player) {
+    public Move miniMaxID(TaulerBits tb, CellType player) {
         
-        Jugador = player;
-        Move movTirar = null, movTirarAnt = null;
-        int cActual, alpha, beta, i = 0, millorAnt = -1;
+        temps.iniciaTirada();
+        return cerca(tb, player, "cerca");
+    }
+    
+    /**
+     * Funció que cerca durant el torn del contrari (ponderació) la posició que s'espera trobar a la tirada següent.
+     * No té el marge de temps d'una tirada: s'atura quan el jugador avisa (tempsAcabat) o en arribar al límit donat.
+     * Deixa la taula de transposició i la taula d'història a punt per a la cerca real.
+     * @param tb Tauler de bits de la posició esperada.
+     * @param player Jugador a qui li tocarà tirar (el mateix que a les cerques reals).
+     * @param limitMs Temps màxim de ponderació en mil·lisegons.
+     * @return Millor moviment trobat per la posició esperada.
+     */
+    public Move pondera(TaulerBits tb, CellType player, long limitMs) {
         
-        PROFUNDITAT_MAXIMA = 0;
+        temps.iniciaPonderacio(limitMs);
+        Move moviment = cerca(tb, player, "ponderacio");
+        ponderat = true;
+        return moviment;
+    }
+    
+    /**
+     * Funció que retorna el moviment que s'espera del jugador que té el torn a un tauler: el millor moviment
+     * guardat a la taula de transposició per aquest tauler o, si no n'hi ha, el primer segons l'ordenació estàtica.
+     * @param tb Tauler de bits.
+     * @return Casella del moviment esperat, o -1 si no té cap moviment.
+     */
+    public int movimentEsperat(TaulerBits tb) {
+        
+        long moviments = tb.moviments();
+        if (moviments == 0) return -1;
+        int simetria = Simetries.simetria(tb, minBuidesSimetria);
+        int moviment = movimentTT(TT.consulta(Simetries.clau(tb, simetria) ^ clauJugador), simetria);
+        if (moviment != TaulaTransposicio.SENSE_MOVIMENT && (moviments & (1L << moviment)) != 0) return moviment;
+        
+        int n = ordenacio.ordena(moviments, TaulaTransposicio.SENSE_MOVIMENT, 0);
+        return (n > 0) ? ordenacio.moviment(0, 0) : Long.numberOfTrailingZeros(moviments);
+    }
+    
+    /**
+     * Funció que fa la cerca iterativa des del tauler tb amb el temps que s'ha preparat al gestor.
+     * @param tb Tauler de bits que representa la partida d'Othello.
+     * @param player Jugador a qui li toca tirar.
+     * @param font Nom de la cerca pel registre de mètriques.
+     * @return Millor moviment on es pot posar una peça segons l'algorisme miniMax.
+     */
+    private Move cerca(TaulerBits tb, CellType player, String font) {
+        
+        Move movTirar = null;
+        int cActual = 0, millorAnt = -1;
+        boolean finalProvat = false;
+        
+        preparaCerca(tb, player);
+        if (!ponderat) novaTirada();
+        ponderat = false;
+        reiniciaComptadors();
+        valorArrel = 0; profCompletada = 0;
+        metriques.iniciaTirada(tauler.buides());
+        int[] movPossibles = llistaMoviments(tauler.moviments());
+        int[] valors = new int[movPossibles.length];
         
         while(true){
-            
-            cActual = Integer.MIN_VALUE;
-            alpha   = Integer.MIN_VALUE;
-            beta    = Integer.MAX_VALUE;
                                     
-            if(playerIDS.tempsAcabat()) break;
+            if(movPossibles.length == 0 || (limitProfunditat > 0 && PROFUNDITAT_MAXIMA >= limitProfunditat)
+               || !temps.potIniciarIteracio()) break;
             else{
                 PROFUNDITAT_MAXIMA++;
+                temps.iniciaIteracio();
                 
-                ArrayList<Point> movPossibles = gs.getMoves(); i = 0;
-                if(millorAnt != -1) Collections.swap(movPossibles, 0, millorAnt);
+                if(millorAnt > 0){
+                    int aux = movPossibles[0]; movPossibles[0] = movPossibles[millorAnt]; movPossibles[millorAnt] = aux;
+                    millorAnt = 0;
+                }
                 
-                for (Point moviment : movPossibles) {
-                    GameStatusNPC nouT = new GameStatusNPC(gs); nouT.movePiece(moviment);
-                    Integer fH = MinValor(nouT, 1, alpha, beta);
-                    if(fH == null){ 
-                        movTirar = movTirarAnt; break; 
+                if (PROFUNDITAT_MAXIMA > PROF_PREVIA_FINAL && !finalProvat && tauler.buides() <= llindarGuanyador) {
+                    // El final només es prova una vegada per tirada i amb una part del temps que queda: si no s'acaba
+                    // i no ha demostrat cap victòria ni empat, es continua la cerca iterativa amb el temps restant.
+                    finalProvat = true;
+                    if (finals == null) finals = new SolucionadorFinal(nomesGuanyador);
+                    int moviment = finals.millorMoviment(tauler, movPossibles, nodesRestants(),
+                                                         temps.aturadaParcial(FRACCIO_FINAL), tauler.buides() > llindarFinal);
+                    NUM_NODES += finals.getNodes(); NODES_VISITATS += finals.getNodes();
+                    metriques.iteracio(tauler.buides(), comptadors(), !finals.isAturat(), moviment, finals.getValor());
+                    if (moviment != -1 && (!finals.isAturat() || finals.getCotaInferior() >= 0)) {
+                        movTirar = new Move(TaulerBits.punt(moviment), nodesExplorats(),
+                                                    tauler.buides(), SearchType.MINIMAX_IDS);
+                        font = "final";
+                        valorArrel = valorFinal(finals.getValor()); profCompletada = tauler.buides();
+                        break;
                     }
-                    else if (fH > cActual) {
-                        cActual = fH; millorAnt = i;
-                        movTirar = new Move(moviment, NUM_NODES,
-                                                      PROF_ASSOLIDA, SearchType.MINIMAX_IDS);
-                    } i++;
+                    PROFUNDITAT_MAXIMA--;
+                    continue;
+                }
+                
+                int alpha = Integer.MIN_VALUE, beta = Integer.MAX_VALUE;
+                if (tipusCerca == TipusCerca.PVS && millorAnt != -1 && Math.abs(cActual) < VICTORIA) {
+                    alpha = cActual - FINESTRA_ASPIRACIO;
+                    beta  = cActual + FINESTRA_ASPIRACIO;
                 }
+                
+                while (true) {
+                    int millor = cercaArrel(movPossibles, valors, alpha, beta);
+                    if (aturat) break;
+                    else if (millor <= alpha) alpha = Integer.MIN_VALUE;
+                    else if (millor >= beta)  beta  = Integer.MAX_VALUE;
+                    else break;
+                }
+                
+                int millorIteracio = millorValor(valors);
+                metriques.iteracio(PROFUNDITAT_MAXIMA, comptadors(), !aturat,
+                                   (valors[millorIteracio] != Integer.MIN_VALUE) ? movPossibles[millorIteracio] : -1, valors[millorIteracio]);
+                if(aturat){
+                    // Iteració incompleta: només es fa servir si el primer moviment (el millor de l'anterior)
+                    // s'ha acabat de cercar i el millor valor trobat no és una cota superior.
+                    if (valors[0] != Integer.MIN_VALUE && valors[millorIteracio] > alpha) {
+                        movTirar = new Move(TaulerBits.punt(movPossibles[millorIteracio]), nodesExplorats(),
+                                                           profunditatAssolida(), SearchType.MINIMAX_IDS);
+                        valorArrel = valors[millorIteracio];
+                    }
+                    break;
+                }
+                temps.acabaIteracio();
+                millorAnt = millorIteracio;
+                cActual = valors[millorAnt];
+                valorArrel = cActual; profCompletada = PROFUNDITAT_MAXIMA;
+                movTirar = new Move(TaulerBits.punt(movPossibles[millorAnt]), nodesExplorats(),
+                                                   profunditatAssolida(), SearchType.MINIMAX_IDS);
             }
-            movTirarAnt = movTirar;   
         }
         
+        if (movTirar == null && movPossibles.length > 0)
+            movTirar = new Move(TaulerBits.punt(movPossibles[0]), nodesExplorats(), 0, SearchType.MINIMAX_IDS);
+        
+        metriques.acabaTirada(profunditatAssolida(), comptadors(), (movTirar != null) ? TaulerBits.casella(movTirar.getTo()) : -1, font);
         return movTirar;
     }
     
     /**
-     * Funció que retorna la heurística mínima de tots els estats següents possibles a l'estat indicat en el tauler gs.
-     * @param gs Tauler que representa una partida d'Othello.
+     * Funció que limita les cerques següents a una profunditat o a un nombre de nodes (0 per no limitar-les).
+     * El límit de nodes es comprova a cada node, també dins del solucionador de finals, i és exacte amb un sol fil
+     * (amb més fils s'aplica a cada fil).
+     * Amb un límit de profunditat de més de 4, les posicions dins del llindar de setFinal es continuen resolent.
+     * @param profunditat Profunditat màxima de la cerca iterativa.
+     * @param nodes Nombre màxim de nodes visitats per tirada.
+     */
+    public void setLimits(int profunditat, long nodes) {
+        
+        limitProfunditat = profunditat;
+        limitNodes = (nodes > 0) ? nodes : Long.MAX_VALUE;
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) ajudant.limitNodes = limitNodes;
+    }
+    
+    /**
+     * Funció que activa o desactiva el mode determinista: la cerca no consulta el rellotge ni el timeout del
+     * jugador i només s'atura pels límits de setLimits, que s'han d'haver indicat. Amb un sol fil, la mateixa
+     * seqüència de cerques dona sempre els mateixos moviments, valors i nombres de nodes.
+     * @param determinista Cert per cercar sense temps.
+     */
+    public void setDeterminista(boolean determinista) {
+        temps.setDeterminista(determinista);
+    }
+    
+    /**
+     * Funció que retorna el valor del moviment triat a la darrera cerca, pel jugador que tirava, a l'escala
+     * de la cerca (els finals resolts valen VICTORIA o DERROTA més la diferència de peces).
+     * @return Valor del millor moviment (0 si no s'ha acabat cap iteració).
+     */
+    public int getValor() {
+        return valorArrel;
+    }
+    
+    /**
+     * Funció que retorna la profunditat de la darrera iteració completa de la darrera cerca (les caselles buides
+     * si s'ha resolt el final).
+     * @return Profunditat completada.
+     */
+    public int getProfunditat() {
+        return profCompletada;
+    }
+    
+    /**
+     * Funció que retorna la variant principal de la darrera cerca: el moviment triat seguit dels millors
+     * moviments guardats a la taula de transposició, mentre siguin legals. Els passos no s'hi inclouen.
+     * @param tb Tauler de bits de la posició cercada.
+     * @param primer Moviment triat a la posició.
+     * @param max Nombre màxim de moviments.
+     * @return Caselles de la variant principal.
+     */
+    public int[] variantPrincipal(TaulerBits tb, int primer, int max) {
+        
+        TaulerBits t = new TaulerBits(tb);
+        int[] vp = new int[max];
+        int n = 0, moviment = primer;
+        while (n < max) {
+            vp[n++] = moviment;
+            t.fesMoviment(moviment);
+            if (t.moviments() == 0) {
+                if (t.finalPartida()) break;
+                t.passa();
+            }
+            int simetria = Simetries.simetria(t, minBuidesSimetria);
+            moviment = movimentTT(TT.consulta(Simetries.clau(t, simetria) ^ clauJugador), simetria);
+            if (moviment == TaulaTransposicio.SENSE_MOVIMENT || (t.moviments() & (1L << moviment)) == 0) break;
+        }
+        
+        return Arrays.copyOf(vp, n);
+    }
+    
+    /**
+     * Funció que activa les claus simètriques de la taula de transposició a les posicions amb com a mínim
+     * minBuides caselles buides: les 8 orientacions d'una posició comparteixen l'entrada i el millor moviment
+     * es guarda en l'orientació canònica. Per defecte, el valor de la propietat del sistema "npc.simetries".
+     * @param minBuides Mínim de caselles buides (Simetries.SENSE_SIMETRIES per desactivar-les).
+     */
+    public void setSimetries(int minBuides) {
+        
+        minBuidesSimetria = minBuides;
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) ajudant.minBuidesSimetria = minBuides;
+    }
+    
+    /**
+     * Funció que activa Multi-ProbCut: abans d'expandir un node amb paràmetres calibrats per la profunditat que
+     * li queda, es fan cerques curtes amb finestra nul·la i, si prediuen que el valor quedarà fora de la finestra,
+     * el node es talla sense cercar-lo sencer. No s'aplica a les posicions on es resol el final de forma exacta.
+     * @param probCut Paràmetres de ProbCut, o null per desactivar-lo.
+     */
+    public void setProbCut(ProbCut probCut) {
+        
+        this.probCut = probCut;
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) ajudant.probCut = probCut;
+    }
+    
+    /**
+     * Funció que atura els fils dels ajudants. S'ha de cridar quan el cercador ja no es farà servir més;
+     * després no es pot tornar a cercar amb més d'un fil.
+     */
+    @Override
+    public void close() {
+        if (fils != null) fils.shutdownNow();
+    }
+    
+    /**
+     * Funció que retorna el registre de mètriques de les tirades d'aquest cercador.
+     * @return Registre de mètriques.
+     */
+    public MetriquesCerca getMetriques() {
+        return metriques;
+    }
+    
+    /**
+     * Funció que assigna el tipus de cerca (també als ajudants).
+     * @param tipus Tipus de cerca.
+     */
+    public void setTipusCerca(TipusCerca tipus) {
+        
+        tipusCerca = tipus;
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) ajudant.tipusCerca = tipus;
+    }
+    
+    /**
+     * Funció que torna el cercador a l'estat d'acabat de crear: buida la taula de transposició (i n'inicialitza
+     * l'edat), la del solucionador de finals i les d'història i killers d'aquest cercador i dels ajudants.
+     * Així una cerca amb límits de profunditat o de nodes dona el mateix resultat per una posició que les
+     * cerques fetes abans.
+     */
+    public void reinicia() {
+        
+        TT.buida();
+        if (finals != null) finals.buida();
+        ordenacio.buida();
+        ponderat = false;
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) ajudant.ordenacio.buida();
+    }
+    
+    /**
+     * Funció que configura el solucionador exacte de finals de partida. El solucionador (amb la seva taula de
+     * transposició) només el té aquest cercador, i es crea la primera vegada que es resol un final.
+     * Amb MARGE_GUANYADOR caselles buides més que el llindar només es resol victòria/empat/derrota, que és molt més
+     * ràpid. Cada resolució té la meitat del temps que queda de la tirada; si no acaba, es continua la cerca iterativa.
+     * Per defecte el llindar és 16: amb un fil, la resolució exacta tarda de mitjana 0,3 s a 16 caselles buides
+     * (màxim 0,8 s) però 1,9 s a 18 (màxim 7 s), i victòria/empat/derrota tarda 0,3 s de mitjana a 18.
+     * El llindar també s'assigna als ajudants, que no fan Multi-ProbCut dins del final.
+     * @param llindar Nombre de caselles buides a partir del qual es resol el final de forma exacta (0 per desactivar-lo).
+     * @param nomesGuanyador Cert per resoldre només victòria/empat/derrota, fals per la diferència exacta de peces.
+     */
+    public void setFinal(int llindar, boolean nomesGuanyador) {
+        
+        llindarFinal = llindar;
+        llindarGuanyador = (llindar > 0) ? llindar + MARGE_GUANYADOR : 0;
+        if (nomesGuanyador != this.nomesGuanyador) finals = null;
+        this.nomesGuanyador = nomesGuanyador;
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) ajudant.llindarFinal = llindar;
+    }
+    
+    /**
+     * Funció que retorna, per la darrera cerca, la proporció de nodes amb tall on el tall l'ha provocat
+     * el primer moviment explorat (inclou els ajudants). Com més a prop d'1, millor és l'ordenació.
+     * @return Taxa de talls al primer moviment (0 si no hi ha hagut cap tall).
+     */
+    public double getTaxaTallPrimer() {
+        
+        long talls = ordenacio.getNodesTallats(), primer = ordenacio.getTallsPrimer();
+        if (ajudants != null) {
+            for (MiniMaxID ajudant : ajudants) {
+                talls += ajudant.ordenacio.getNodesTallats(); primer += ajudant.ordenacio.getTallsPrimer();
+            }
+        }
+        
+        return (talls == 0) ? 0.0 : (double) primer / talls;
+    }
+    
+    /**
+     * Funció que retorna la posició del moviment amb el millor valor (el primer en cas d'empat).
+     * @param valors Valor de cada moviment de l'arrel (Integer.MIN_VALUE si no s'ha acabat de cercar).
+     * @return Posició del millor moviment.
+     */
+    private static int millorValor(int[] valors) {
+        
+        int millor = 0;
+        for (int i = 1; i < valors.length; i++)
+            if (valors[i] > valors[millor]) millor = i;
+        
+        return millor;
+    }
+    
+    /**
+     * Funció que deixa el cercador a punt per començar una nova cerca des del tauler tb (els ajudants
+     * ho fan a cada iteració).
+     * @param tb Tauler de bits que representa la partida d'Othello.
+     * @param player Jugador favorable.
+     */
+    private void preparaCerca(TaulerBits tb, CellType player) {
+        
+        Jugador = player;
+        clauJugador = (player == CellType.PLAYER1) ? 0L : TaulaTransposicio.CLAU_PERSPECTIVA;
+        PROFUNDITAT_MAXIMA = 0; aturat = false;
+        tauler.copia(tb);
+    }
+    
+    /**
+     * Funció que prepara per una tirada nova l'estat que es conserva entre tirades (i entre partides): fa
+     * envellir la taula de transposició, perquè les entrades antigues siguin les primeres a reemplaçar, i
+     * la taula d'història de l'ordenació, d'aquest cercador i dels ajudants.
+     * No es fa a la primera tirada després d'una ponderació: la cerca continua la ponderada (que ja ha fet
+     * envellir les taules), i si ho fes les entrades ponderades serien les primeres a reemplaçar.
+     */
+    private void novaTirada() {
+        
+        TT.novaCerca();
+        ordenacio.novaCerca();
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) ajudant.ordenacio.novaCerca();
+    }
+    
+    /**
+     * Funció que valora tots els moviments de l'arrel dins la finestra (alpha, beta).
+     * El primer moviment es cerca amb la finestra completa i la resta amb l'alfa del millor trobat.
+     * Els moviments que no s'arriben a cercar (tall per beta o temps esgotat) queden amb valor Integer.MIN_VALUE.
+     * @param movPossibles Moviments de l'arrel.
+     * @param valors Vector on es deixa el valor de cada moviment.
+     * @param alpha Paràmetre alfa que s'utiliza en la poda alfa-beta.
+     * @param beta Paràmetre alfa que s'utiliza en la poda alfa-beta.
+     * @return Millor valor trobat (no vàlid si 'aturat').
+     */
+    private int cercaArrel(int[] movPossibles, int[] valors, int alpha, int beta) {
+        
+        Arrays.fill(valors, Integer.MIN_VALUE);
+        int millor = valoraMoviment(movPossibles[0], alpha, beta);
+        if (aturat) return millor;
+        valors[0] = millor;
+        if (millor >= beta) return millor;
+        
+        if (ajudants == null) {
+            for (int i = 1; i < movPossibles.length && millor < beta; i++) {
+                int valor = valoraGerma(movPossibles[i], Math.max(alpha, millor), beta);
+                if (aturat) break;
+                valors[i] = valor;
+                millor = Math.max(millor, valor);
+            }
+        }
+        else millor = cercaParallela(movPossibles, valors, Math.max(alpha, millor), beta);
+        
+        return millor;
+    }
+    
+    /**
+     * Funció que fa un moviment de l'arrel, en retorna el valor i el desfà.
+     * @param moviment Índex de bit del moviment.
+     * @param alpha Paràmetre alfa que s'utiliza en la poda alfa-beta.
+     * @param beta Paràmetre alfa que s'utiliza en la poda alfa-beta.
+     * @return Valor del moviment (no vàlid si 'aturat').
+     */
+    private int valoraMoviment(int moviment, int alpha, int beta) {
+        
+        long girades = tauler.fesMoviment(moviment);
+        int fH = MinValor(1, alpha, beta);
+        tauler.desfesMoviment(moviment, girades);
+        
+        return fH;
+    }
+    
+    /**
+     * Funció que valora un moviment de l'arrel que no és el primer. En mode PVS primer es cerca amb
+     * finestra nul·la i només es torna a cercar amb la finestra completa si millora alfa.
+     * @param moviment Índex de bit del moviment.
+     * @param alpha Paràmetre alfa que s'utiliza en la poda alfa-beta.
+     * @param beta Paràmetre alfa que s'utiliza en la poda alfa-beta.
+     * @return Valor del moviment (no vàlid si 'aturat').
+     */
+    private int valoraGerma(int moviment, int alpha, int beta) {
+        
+        if (tipusCerca != TipusCerca.PVS)
+            return valoraMoviment(moviment, alpha, beta);
+        
+        int fH = valoraMoviment(moviment, alpha, alpha + 1);
+        if (!aturat && fH > alpha && fH < beta)
+            fH = valoraMoviment(moviment, alpha, beta);
+        
+        return fH;
+    }
+    
+    /**
+     * Funció que demana als ajudants que aturin la cerca en curs (la consulten cada GestorTemps.MASCARA_NODES + 1
+     * nodes), o els torna a deixar cercar.
+     * @param aturar Cert per aturar-los, fals per tornar-los a deixar cercar.
+     */
+    private void aturaAjudants(boolean aturar) {
+        for (MiniMaxID ajudant : ajudants) ajudant.aturadaAjudant = aturar;
+    }
+    
+    /**
+     * Funció que valora en paral·lel tots els moviments de l'arrel menys el primer, que ja s'ha valorat.
+     * Cada fil va agafant el següent moviment pendent i el cerca amb l'alfa més alta trobada fins aleshores.
+     * L'alfa es rebaixa en 1 perquè els empats siguin valors exactes i no cotes.
+     * Sempre espera que acabin tots els ajudants, perquè cap no continuï escrivint a 'valors' ni al seu tauler
+     * durant la cerca següent. Si el fil s'interromp, atura els ajudants, marca la cerca com a aturada i
+     * restaura l'estat d'interrupció; si un ajudant falla, els atura i en rellança l'error.
+     * @param movPossibles Moviments de l'arrel.
+     * @param valors Vector on es deixa el valor de cada moviment.
+     * @param alpha Paràmetre alfa inicial.
+     * @param beta Paràmetre beta.
+     * @return Millor valor trobat (no vàlid si 'aturat').
+     */
+    private int cercaParallela(int[] movPossibles, int[] valors, int alpha, int beta) {
+        
+        AtomicInteger seguent = new AtomicInteger(1);
+        AtomicInteger alphaCompartida = new AtomicInteger(alpha);
+        Future<?>[] tasques = new Future<?>[ajudants.length];
+        
+        for (int k = 0; k < ajudants.length; k++) {
+            MiniMaxID ajudant = ajudants[k];
+            ajudant.preparaCerca(tauler, Jugador);
+            ajudant.PROFUNDITAT_MAXIMA = PROFUNDITAT_MAXIMA;
+            tasques[k] = fils.submit(() -> ajudant.valoraPendents(movPossibles, valors, seguent, alphaCompartida, beta));
+        }
+        valoraPendents(movPossibles, valors, seguent, alphaCompartida, beta);
+        
+        boolean interromput = false;
+        Throwable error = null;
+        for (int k = 0; k < tasques.length; k++) {
+            while (true) {
+                try {
+                    tasques[k].get();
+                } catch (InterruptedException e) {
+                    if (!interromput) aturaAjudants(true);
+                    interromput = true;
+                    continue;
+                } catch (ExecutionException e) {
+                    if (error == null) aturaAjudants(true);
+                    if (error == null) error = e.getCause();
+                }
+                break;
+            }
+            aturat |= ajudants[k].aturat;
+        }
+        aturaAjudants(false);
+        if (interromput) {
+            aturat = true;
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) throw new IllegalStateException("Error en un fil ajudant", error);
+        
+        int millor = Integer.MIN_VALUE;
+        for (int valor : valors) millor = Math.max(millor, valor);
+        
+        return millor;
+    }
+    
+    /**
+     * Funció que executa cada fil de la cerca en paral·lel: valora moviments de l'arrel fins que no en queden.
+     * @param movPossibles Moviments de l'arrel.
+     * @param valors Vector on es deixa el valor de cada moviment.
+     * @param seguent Índex del següent moviment pendent.
+     * @param alphaCompartida Millor valor trobat entre tots els fils.
+     * @param beta Paràmetre beta.
+     */
+    private void valoraPendents(int[] movPossibles, int[] valors, AtomicInteger seguent, AtomicInteger alphaCompartida, int beta) {
+        
+        int i;
+        while (!aturat && (i = seguent.getAndIncrement()) < movPossibles.length) {
+            int alpha = alphaCompartida.get();
+            int valor = valoraGerma(movPossibles[i], (alpha == Integer.MIN_VALUE) ? alpha : alpha - 1, beta);
+            if (aturat) break;
+            valors[i] = valor;
+            alphaCompartida.accumulateAndGet(valor, Math::max);
+        }
+    }
+    
+    /**
+     * Funció que retorna el nombre de nodes fulla avaluats a la tirada actual entre aquest cercador i els seus ajudants.
+     * @return Nombre de nodes explorats a la tirada.
+     */
+    private long nodesExplorats() {
+        
+        long n = NUM_NODES;
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) n += ajudant.NUM_NODES;
+        
+        return n;
+    }
+    
+    /**
+     * Funció que retorna la profunditat màxima assolida entre aquest cercador i els seus ajudants.
+     * @return Profunditat màxima assolida.
+     */
+    private int profunditatAssolida() {
+        
+        int p = PROF_ASSOLIDA;
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) p = Math.max(p, ajudant.PROF_ASSOLIDA);
+        
+        return p;
+    }
+    
+    /**
+     * Funció que posa a 0 els comptadors de la tirada, d'aquest cercador i dels ajudants.
+     */
+    private void reiniciaComptadors() {
+        
+        NUM_NODES = NODES_VISITATS = ENCERTS_TT = COLISIONS = HEURISTIQUES_REUTILITZADES = TALLS = TALLS_PRIMER = TALLS_PROBCUT = 0L;
+        PROF_ASSOLIDA = 0;
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) ajudant.reiniciaComptadors();
+    }
+    
+    /**
+     * Funció que retorna els comptadors de la tirada sumats entre aquest cercador i els seus ajudants,
+     * en l'ordre que espera MetriquesCerca.
+     * @return Vector de comptadors (sempre el mateix objecte).
+     */
+    private long[] comptadors() {
+        
+        Arrays.fill(comptadors, 0L);
+        sumaComptadors(comptadors);
+        if (ajudants != null)
+            for (MiniMaxID ajudant : ajudants) ajudant.sumaComptadors(comptadors);
+        
+        return comptadors;
+    }
+    
+    /**
+     * Funció que suma els comptadors d'aquest cercador a un vector de comptadors.
+     * @param c Vector de comptadors en l'ordre de MetriquesCerca.
+     */
+    private void sumaComptadors(long[] c) {
+        c[MetriquesCerca.NODES] += NODES_VISITATS;
+        c[MetriquesCerca.FULLES] += NUM_NODES;
+        c[MetriquesCerca.ENCERTS_TT] += ENCERTS_TT;
+        c[MetriquesCerca.COLISIONS_TT] += COLISIONS;
+        c[MetriquesCerca.TALLS_TT] += HEURISTIQUES_REUTILITZADES;
+        c[MetriquesCerca.TALLS] += TALLS;
+        c[MetriquesCerca.TALLS_PRIMER] += TALLS_PRIMER;
+        c[MetriquesCerca.TALLS_PROBCUT] += TALLS_PROBCUT;
+    }
+    
+    /**
+     * Funció que retorna la heurística mínima de tots els estats següents possibles a l'estat actual del tauler de cerca.
+     * El rellotge es consulta cada GestorTemps.MASCARA_NODES + 1 nodes; si s'esgota el temps marca 'aturat'
+     * i el valor retornat no s'ha de fer servir.
      * @param prof Profunditat actual en la que está la funció MinValor.
      * @param alpha Paràmetre alfa que s'utiliza en la poda alfa-beta.
      * @param beta Paràmetre alfa que s'utiliza en la poda alfa-beta.
-     * @return Heurística mínima de tots els estats següents possibles a l'estat indicat en el Tauler gs.
+     * @return Heurística mínima de tots els estats següents possibles a l'estat actual del tauler de cerca.
      */
-    private Integer MinValor(GameStatusNPC gs, int prof, int alpha, int beta){
+    private int MinValor(int prof, int alpha, int beta){
         
-        int cActual = Integer.MAX_VALUE;
+        int cActual = Integer.MAX_VALUE, alphaInicial = alpha, betaInicial = beta;
+        long moviments = tauler.moviments();
         
-        if(playerIDS.tempsAcabat())
-            return null;
-
-        else if (gs.checkGameOver())
-            cActual = costFinalPartida(gs);
+        if(++NODES_VISITATS > limitNodes || ((NODES_VISITATS & GestorTemps.MASCARA_NODES) == 0 && (aturadaAjudant || temps.esgotat()))) aturat = true;
+        if(aturat) return cActual;
         
-        else if (prof == PROFUNDITAT_MAXIMA || gs.getMoves().isEmpty()) {
-            NUM_NODES++;
-            long hashTauler = hashValue(gs);
-            
-            if (BD.hiEsH(hashTauler))
-                cActual = BD.valorH(hashTauler);
-            else {
-                cActual = H.fHeuristica(gs, Jugador);
-                BD.afegirH(hashTauler, cActual);
+        if (moviments == 0 && tauler.finalPartida())
+            return costFinalPartida(tauler);
+        
+        int simetria = (prof < PROFUNDITAT_MAXIMA) ? Simetries.simetria(tauler, minBuidesSimetria) : Simetries.SENSE_SIMETRIA;
+        long hashTauler = Simetries.clau(tauler, simetria) ^ clauJugador;
+        long entrada = TT.consulta(hashTauler);
+        if (entrada != 0) ENCERTS_TT++;
+        else if (TT.colisio(hashTauler)) COLISIONS++;
+        if (entrada != 0 && TaulaTransposicio.profunditat(entrada) >= PROFUNDITAT_MAXIMA - prof) {
+            int valor = TaulaTransposicio.valor(entrada), cota = TaulaTransposicio.cota(entrada);
+            if (cota == TaulaTransposicio.EXACTA
+                || (cota == TaulaTransposicio.INFERIOR && valor >= beta)
+                || (cota == TaulaTransposicio.SUPERIOR && valor <= alpha)) {
+                HEURISTIQUES_REUTILITZADES++; return valor;
             }
         }
         
+        if (probCut != null && moviments != 0 && prof < PROFUNDITAT_MAXIMA) {
+            int tall = provaProbCut(prof, alpha, beta, false);
+            if (aturat) return cActual;
+            if (tall != SENSE_TALL) return tall;
+        }
+        
+        int millorMov = TaulaTransposicio.SENSE_MOVIMENT;
+        
+        if (prof == PROFUNDITAT_MAXIMA) {
+            NUM_NODES++;
+            cActual = H.fHeuristica(tauler, Jugador);
+        }
+        
+        else if (moviments == 0) {
+            tauler.passa();
+            cActual = MaxValor(prof + 1, alpha, beta);
+            tauler.passa();
+        }
+        
         else {
-            ArrayList<Point> movPossibles = gs.getMoves();
-            for (Point moviment : movPossibles) {
-                GameStatusNPC nouT = new GameStatusNPC(gs);
-                nouT.movePiece(moviment); PROF_ASSOLIDA = prof + 1;
-                Integer fHMAX = MaxValor(nouT, prof + 1, alpha, beta);
-                if(fHMAX != null) {
-                    cActual = Math.min(cActual, fHMAX);
-                    beta = Math.min(cActual, beta); if (alpha >= beta) break; 
-                } else return null;
+            int n = ordenacio.ordena(moviments, movimentTT(entrada, simetria), prof);
+            for (int k = 0; k < n; k++) {
+                int moviment = ordenacio.moviment(prof, k);
+                long girades = tauler.fesMoviment(moviment); PROF_ASSOLIDA = prof + 1;
+                int fHMAX;
+                if (tipusCerca == TipusCerca.PVS && cActual != Integer.MAX_VALUE) {
+                    fHMAX = MaxValor(prof + 1, beta - 1, beta);
+                    if (!aturat && fHMAX < beta && fHMAX > alpha) fHMAX = MaxValor(prof + 1, alpha, beta);
+                }
+                else fHMAX = MaxValor(prof + 1, alpha, beta);
+                tauler.desfesMoviment(moviment, girades);
+                if(aturat) return cActual;
+                if(fHMAX < cActual){
+                    cActual = fHMAX; millorMov = moviment;
+                }
+                beta = Math.min(cActual, beta);
+                if (alpha >= beta) {
+                    TALLS++; if (k == 0) TALLS_PRIMER++;
+                    ordenacio.tall(prof, moviment, PROFUNDITAT_MAXIMA - prof, k); break;
+                }
             }
         }
+        
+        if (!aturat)
+            TT.guarda(hashTauler, PROFUNDITAT_MAXIMA - prof, tipusCota(cActual, alphaInicial, betaInicial), cActual,
+                      Simetries.transformaMoviment(millorMov, simetria));
 
         return cActual;
     }
     
     /**
-     * Funció que retorna la heurística máxima de tots els estats següents possibles a l'estat indicat en el tauler gs.
-     * @param gs Tauler que representa una partida d'Othello.
+     * Funció que retorna la heurística máxima de tots els estats següents possibles a l'estat actual del tauler de cerca.
+     * El rellotge es consulta cada GestorTemps.MASCARA_NODES + 1 nodes; si s'esgota el temps marca 'aturat'
+     * i el valor retornat no s'ha de fer servir.
      * @param prof Profunditat actual en la que está la funció MaxValor.
      * @param alpha Paràmetre alfa que s'utiliza en la poda alfa-beta.
      * @param beta Paràmetre alfa que s'utiliza en la poda alfa-beta.
-     * @return Heurística màxima de tots els estats següents possibles a l'estat indicat en el tauler gs.
+     * @return Heurística màxima de tots els estats següents possibles a l'estat actual del tauler de cerca.
      */
-    private Integer MaxValor(GameStatusNPC gs, int prof, int alpha, int beta){
+    private int MaxValor(int prof, int alpha, int beta){
+        
+        int cActual = Integer.MIN_VALUE, alphaInicial = alpha, betaInicial = beta;
+        long moviments = tauler.moviments();
         
-        int cActual = Integer.MIN_VALUE;
+        if(++NODES_VISITATS > limitNodes || ((NODES_VISITATS & GestorTemps.MASCARA_NODES) == 0 && (aturadaAjudant || temps.esgotat()))) aturat = true;
+        if(aturat) return cActual;
         
-        if(playerIDS.tempsAcabat())
-            return null;
+        if (moviments == 0 && tauler.finalPartida())
+            return costFinalPartida(tauler);
         
-        else if (gs.checkGameOver())
-            cActual = costFinalPartida(gs);
+        int simetria = (prof < PROFUNDITAT_MAXIMA) ? Simetries.simetria(tauler, minBuidesSimetria) : Simetries.SENSE_SIMETRIA;
+        long hashTauler = Simetries.clau(tauler, simetria) ^ clauJugador;
+        long entrada = TT.consulta(hashTauler);
+        if (entrada != 0) ENCERTS_TT++;
+        else if (TT.colisio(hashTauler)) COLISIONS++;
+        if (entrada != 0 && TaulaTransposicio.profunditat(entrada) >= PROFUNDITAT_MAXIMA - prof) {
+            int valor = TaulaTransposicio.valor(entrada), cota = TaulaTransposicio.cota(entrada);
+            if (cota == TaulaTransposicio.EXACTA
+                || (cota == TaulaTransposicio.INFERIOR && valor >= beta)
+                || (cota == TaulaTransposicio.SUPERIOR && valor <= alpha)) {
+                HEURISTIQUES_REUTILITZADES++; return valor;
+            }
+        }
+        
+        if (probCut != null && moviments != 0 && prof < PROFUNDITAT_MAXIMA) {
+            int tall = provaProbCut(prof, alpha, beta, true);
+            if (aturat) return cActual;
+            if (tall != SENSE_TALL) return tall;
+        }
+        
+        int millorMov = TaulaTransposicio.SENSE_MOVIMENT;
               
-        else if (prof == PROFUNDITAT_MAXIMA || gs.getMoves().isEmpty()) {
+        if (prof == PROFUNDITAT_MAXIMA) {
             NUM_NODES++;
-            long hashTauler = hashValue(gs);
-            
-            if (BD.hiEsH(hashTauler))
-                cActual = BD.valorH(hashTauler);
-            else {
-                cActual = H.fHeuristica(gs, Jugador);
-                BD.afegirH(hashTauler, cActual);
-            }
+            cActual = H.fHeuristica(tauler, Jugador);
         } 
+        
+        else if (moviments == 0) {
+            tauler.passa();
+            cActual = MinValor(prof + 1, alpha, beta);
+            tauler.passa();
+        }
+        
         else {
-            ArrayList<Point> movPossibles = gs.getMoves();
-            for (Point moviment : movPossibles) {
-                GameStatusNPC nouT = new GameStatusNPC(gs);
-                nouT.movePiece(moviment); PROF_ASSOLIDA = prof + 1;
-                Integer fHMIN = MinValor(nouT, prof + 1, alpha, beta);
-                if(fHMIN != null){
-                    cActual = Math.max(cActual, fHMIN); 
-                    alpha = Math.max(cActual, alpha); if (alpha >= beta) break;
-                } else return null;
+            int n = ordenacio.ordena(moviments, movimentTT(entrada, simetria), prof);
+            for (int k = 0; k < n; k++) {
+                int moviment = ordenacio.moviment(prof, k);
+                long girades = tauler.fesMoviment(moviment); PROF_ASSOLIDA = prof + 1;
+                int fHMIN;
+                if (tipusCerca == TipusCerca.PVS && cActual != Integer.MIN_VALUE) {
+                    fHMIN = MinValor(prof + 1, alpha, alpha + 1);
+                    if (!aturat && fHMIN > alpha && fHMIN < beta) fHMIN = MinValor(prof + 1, alpha, beta);
+                }
+                else fHMIN = MinValor(prof + 1, alpha, beta);
+                tauler.desfesMoviment(moviment, girades);
+                if(aturat) return cActual;
+                if(fHMIN > cActual){
+                    cActual = fHMIN; millorMov = moviment;
+                }
+                alpha = Math.max(cActual, alpha);
+                if (alpha >= beta) {
+                    TALLS++; if (k == 0) TALLS_PRIMER++;
+                    ordenacio.tall(prof, moviment, PROFUNDITAT_MAXIMA - prof, k); break;
+                }
             }
         }
+        
+        if (!aturat)
+            TT.guarda(hashTauler, PROFUNDITAT_MAXIMA - prof, tipusCota(cActual, alphaInicial, betaInicial), cActual,
+                      Simetries.transformaMoviment(millorMov, simetria));
 
         return cActual;
         
     }
-
-    /**
-     * Funció que retorna un valor gran en funció si ets guanyador o perdedor de la partida.
-     * @param gs Tauler que representa una partida d'Othello.
-     * @return Valor que representa la victoria o derrota del jugador.
-     */
-    private int costFinalPartida(GameStatusNPC gs) {
-        return ((gs.GetWinner() == Jugador) ? VICTORIA : DERROTA);
-    }
     
     /**
-     * Funció que retorna una taula de 2x8x8 de nombres aleatoris de tipus Long.
-     * @return Taula de 2x8x8 de nombres aleatoris de tipus Long.
+     * Funció que prova els controls de Multi-ProbCut d'un node, del més curt al més llarg. Cada control fa una
+     * cerca a profunditat dc amb finestra nul·la a la cota que, segons la regressió, fa que el valor a la
+     * profunditat que queda superi beta (o no arribi a alfa) amb el marge del llindar. La cerca curta es fa
+     * al mateix node baixant temporalment PROFUNDITAT_MAXIMA, de manera que les taules indexades per prof
+     * i la taula de transposició (que guarda la profunditat que queda) es continuen fent servir igual.
+     * @param prof Profunditat del node.
+     * @param alpha Paràmetre alfa del node.
+     * @param beta Paràmetre beta del node.
+     * @param max Cert si és un node MAX (tira Jugador).
+     * @return beta o alfa si es pot tallar, SENSE_TALL si no (o si s'ha aturat la cerca).
      */
-    private long[][][] generaTaulaAlaetoria() {
-
-        Random R = new Random();
-        long[][][] taula = new long[2][8][8];
-        for (int k = 0; k < 2; k++) {
-            for (int i = 0; i < 8; i++) {
-                for (int j = 0; j < 8; j++) {
-                    taula[k][i][j] = R.nextLong();
+    private int provaProbCut(int prof, int alpha, int beta, boolean max) {
+        
+        int d = PROFUNDITAT_MAXIMA - prof, buides = tauler.buides(), signe = max ? 1 : -1;
+        if (buides <= llindarFinal) return SENSE_TALL;
+        
+        int profMaxima = PROFUNDITAT_MAXIMA;
+        try {
+            for (int k = 0; k < ProbCut.MAX_CONTROLS; k++) {
+                int dc = probCut.profCurta(d, k);
+                if (dc < 0) break;
+                PROFUNDITAT_MAXIMA = prof + dc;
+                if (beta < VICTORIA) {
+                    int cota = probCut.cotaAlta(buides, d, k, beta, signe);
+                    if (cota != Integer.MAX_VALUE && cota < VICTORIA) {
+                        int v = max ? MaxValor(prof, cota - 1, cota) : MinValor(prof, cota - 1, cota);
+                        if (aturat) return SENSE_TALL;
+                        if (v >= cota) { TALLS_PROBCUT++; return beta; }
+                    }
+                }
+                if (alpha > DERROTA) {
+                    int cota = probCut.cotaBaixa(buides, d, k, alpha, signe);
+                    if (cota != Integer.MIN_VALUE && cota > DERROTA) {
+                        int v = max ? MaxValor(prof, cota, cota + 1) : MinValor(prof, cota, cota + 1);
+                        if (aturat) return SENSE_TALL;
+                        if (v <= cota) { TALLS_PROBCUT++; return alpha; }
+                    }
                 }
             }
+        } finally {
+            PROFUNDITAT_MAXIMA = profMaxima;
         }
         
-        return taula;
+        return SENSE_TALL;
+    }
+    
+    /**
+     * Funció que retorna el millor moviment guardat a una entrada de la taula de transposició, desfent la
+     * simetria amb què s'ha calculat la clau.
+     * @param entrada Dades de la taula de transposició del tauler (0 si no n'hi ha).
+     * @param simetria Simetria de la clau del tauler (o Simetries.SENSE_SIMETRIA).
+     * @return Índex de bit del moviment o TaulaTransposicio.SENSE_MOVIMENT.
+     */
+    private int movimentTT(long entrada, int simetria) {
+        
+        if (entrada == 0) return TaulaTransposicio.SENSE_MOVIMENT;
+        int moviment = TaulaTransposicio.moviment(entrada);
+        return (simetria > 0) ? Simetries.transformaMoviment(moviment, Simetries.inversa(simetria)) : moviment;
+    }
+    
+    /**
+     * Funció que retorna el tipus de cota que representa un valor respecte a la finestra alfa-beta amb la que s'ha cercat.
+     * @param valor Valor obtingut.
+     * @param alpha Valor d'alfa en entrar al node.
+     * @param beta Valor de beta en entrar al node.
+     * @return SUPERIOR si valor &lt;= alfa, INFERIOR si valor &gt;= beta, EXACTA en cas contrari.
+     */
+    private int tipusCota(int valor, int alpha, int beta) {
+        
+        if (valor <= alpha)     return TaulaTransposicio.SUPERIOR;
+        else if (valor >= beta) return TaulaTransposicio.INFERIOR;
+        else                    return TaulaTransposicio.EXACTA;
     }
 
     /**
-     * Funció que retorna del valor de hash Zobrist que representa el tauler gs.
-     * @param gs Tauler que representa una partida d'Othello.
-     * @return Valor de hash Zobrist que representa el tauler gs.
+     * Funció que retorna els nodes que li queden a la resolució exacta del final dins del límit de nodes.
+     * @return Nombre màxim de nodes del solucionador (Long.MAX_VALUE sense límit).
      */
-    private long hashValue(GameStatusNPC gs) {
+    private long nodesRestants() {
+        return (limitNodes == Long.MAX_VALUE) ? Long.MAX_VALUE : limitNodes - NODES_VISITATS;
+    }
+    
+    /**
+     * Funció que converteix el valor del solucionador de finals (diferència de peces, o només el signe)
+     * a l'escala de la cerca.
+     * @param diferencia Valor del solucionador pel jugador que té el torn.
+     * @return Valor a l'escala de costFinalPartida.
+     */
+    private int valorFinal(int diferencia) {
+        if (diferencia > 0)         return VICTORIA + diferencia;
+        else if (diferencia < 0)    return DERROTA + diferencia;
+        else                        return 0;
+    }
+    
+    /**
+     * Funció que retorna un valor gran en funció si ets guanyador o perdedor de la partida, més la diferència de peces.
+     * @param tb Tauler de bits que representa una partida d'Othello.
+     * @return Valor que representa la victoria o derrota del jugador (0 en cas d'empat).
+     */
+    private int costFinalPartida(TaulerBits tb) {
+        int diferencia = Long.bitCount(tb.peces(Jugador)) - Long.bitCount(tb.peces(CellType.opposite(Jugador)));
+        if (diferencia > 0)         return VICTORIA + diferencia;
+        else if (diferencia < 0)    return DERROTA + diferencia;
+        else                        return 0;
+    }
+    
+    /**
+     * Funció que converteix una màscara de moviments en un vector d'índexs de bit.
+     * @param moviments Bitboard amb un bit per cada moviment.
+     * @return Vector amb l'índex de cada moviment.
+     */
+    private int[] llistaMoviments(long moviments) {
         
-        long h = 0;
-        for(int i = 0; i < 8; i++){
-            for(int j = 0; j < 8; j++){
-                if(gs.getPosOccupied(i, j)){
-                    h = h ^ (taulaClaus[gs.getPosColor(i, j)][i][j]);
-                }
-            }
-        } gs.setHashValue(h);
+        int[] llista = new int[Long.bitCount(moviments)]; int i = 0;
+        for(long m = moviments; m != 0; m &= m - 1)
+            llista[i++] = Long.numberOfTrailingZeros(m);
         
-        return h;
+        return llista;
     }
     
 }
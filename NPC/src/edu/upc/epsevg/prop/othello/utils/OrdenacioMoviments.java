@@ -0,0 +1,146 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+/**
+ * Classe que ordena els moviments de cada node per explorar primer els que més probablement provocaran un tall.
+ * L'ordre és: moviment de la taula de transposició, moviments killer de la profunditat, taula d'història
+ * (butterfly) sobre les 64 caselles i, per desempatar, els pesos estàtics de Heuristica.
+ * Cada cercador (cada fil) en té una instància pròpia; les llistes de cada profunditat es reserven a la
+ * constructora i no es crea cap objecte durant la cerca.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class OrdenacioMoviments {
+
+    private final static int MAX_PROF = 128, MAX_MOVIMENTS = 64, KILLERS = 2;
+    private final static int PUNTS_TT = 1 << 30, PUNTS_KILLER = 1 << 29, MAX_HISTORIA = 1 << 24;
+
+    private final int[][] llistes = new int[MAX_PROF][MAX_MOVIMENTS];
+    private final int[][] punts = new int[MAX_PROF][MAX_MOVIMENTS];
+    private final int[][] killers = new int[MAX_PROF][KILLERS];
+    private final int[] historia = new int[64];
+
+    private long nodesTallats = 0L, tallsPrimer = 0L;
+
+    /**
+     * Constructora de la classe.
+     */
+    public OrdenacioMoviments() {
+        buidaKillers();
+    }
+
+    /**
+     * Funció que ordena els moviments d'un node i els deixa a la llista de la profunditat indicada.
+     * @param moviments Bitboard amb els moviments legals.
+     * @param movTT Millor moviment de la taula de transposició o TaulaTransposicio.SENSE_MOVIMENT.
+     * @param prof Profunditat del node.
+     * @return Nombre de moviments de la llista.
+     */
+    public int ordena(long moviments, int movTT, int prof) {
+
+        int p = Math.min(prof, MAX_PROF - 1), n = 0;
+        int[] llista = llistes[p], punt = punts[p];
+
+        for (long m = moviments; m != 0; m &= m - 1) {
+            int c = Long.numberOfTrailingZeros(m);
+            int v;
+            if (c == movTT)                 v = PUNTS_TT;
+            else if (c == killers[p][0])    v = PUNTS_KILLER + 1;
+            else if (c == killers[p][1])    v = PUNTS_KILLER;
+            else                            v = (historia[c] << 4) + Heuristica.pesCasella(c) + 8;
+
+            int i = n++;
+            while (i > 0 && punt[i - 1] < v) {
+                llista[i] = llista[i - 1]; punt[i] = punt[i - 1]; i--;
+            }
+            llista[i] = c; punt[i] = v;
+        }
+
+        return n;
+    }
+
+    /**
+     * Funció que retorna el moviment i-èssim de la llista ordenada d'una profunditat.
+     * @param prof Profunditat del node.
+     * @param i Posició dins la llista.
+     * @return Índex de bit del moviment.
+     */
+    public int moviment(int prof, int i) {
+        return llistes[Math.min(prof, MAX_PROF - 1)][i];
+    }
+
+    /**
+     * Funció que registra que un moviment ha provocat un tall alfa-beta.
+     * @param prof Profunditat del node.
+     * @param moviment Índex de bit del moviment.
+     * @param profRestant Profunditat que quedava per cercar des del node.
+     * @param index Posició del moviment dins la llista ordenada.
+     */
+    public void tall(int prof, int moviment, int profRestant, int index) {
+
+        int p = Math.min(prof, MAX_PROF - 1);
+        if (killers[p][0] != moviment) {
+            killers[p][1] = killers[p][0];
+            killers[p][0] = moviment;
+        }
+
+        historia[moviment] += profRestant * profRestant;
+        if (historia[moviment] > MAX_HISTORIA) envelleix();
+
+        nodesTallats++;
+        if (index == 0) tallsPrimer++;
+    }
+
+    /**
+     * Funció que prepara l'ordenació per una nova cerca: buida els killers i les estadístiques
+     * i divideix per 2 la taula d'història perquè pesi més la informació recent.
+     */
+    public void novaCerca() {
+        buidaKillers();
+        envelleix();
+        nodesTallats = 0L;
+        tallsPrimer = 0L;
+    }
+
+    /**
+     * Funció que torna l'ordenació a l'estat inicial: buida els killers, la taula d'història i les estadístiques.
+     */
+    public void buida() {
+        buidaKillers();
+        java.util.Arrays.fill(historia, 0);
+        nodesTallats = 0L;
+        tallsPrimer = 0L;
+    }
+
+    /**
+     * Funció que retorna el nombre de nodes on s'ha produït un tall durant la cerca actual.
+     * @return Nombre de nodes amb tall.
+     */
+    public long getNodesTallats() {
+        return nodesTallats;
+    }
+
+    /**
+     * Funció que retorna el nombre de nodes on el tall l'ha provocat el primer moviment explorat.
+     * @return Nombre de talls al primer moviment.
+     */
+    public long getTallsPrimer() {
+        return tallsPrimer;
+    }
+
+    /**
+     * Funció que divideix per 2 tots els valors de la taula d'història.
+     */
+    private void envelleix() {
+        for (int c = 0; c < 64; c++) historia[c] >>= 1;
+    }
+
+    /**
+     * Funció que esborra tots els moviments killer.
+     */
+    private void buidaKillers() {
+        for (int[] k : killers) {
+            k[0] = TaulaTransposicio.SENSE_MOVIMENT;
+            k[1] = TaulaTransposicio.SENSE_MOVIMENT;
+        }
+    }
+
+}
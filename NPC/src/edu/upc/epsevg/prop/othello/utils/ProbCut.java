@@ -0,0 +1,238 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+import java.io.Reader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Classe amb els paràmetres de Multi-ProbCut: per una profunditat d, el valor d'una cerca a profunditat d es
+ * prediu a partir del d'una cerca curta a profunditat dc com a*v(dc) + b, amb un error de desviació típica sigma.
+ * Si la cerca curta diu que, amb un marge de llindar*sigma, el valor quedarà fora de la finestra, la cerca a
+ * profunditat d no es fa. Cada profunditat pot tenir fins a MAX_CONTROLS cerques curtes (de la més curta a la
+ * més llarga), i els paràmetres depenen del tram de caselles buides (MIDA_TRAM caselles per tram).
+ * Els valors són des del punt de vista del jugador que té el torn. Els paràmetres es calibren amb
+ * eines.CalibraProbCut i es guarden en un fitxer de text amb una línia per control: "d dc tram a b sigma n".
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class ProbCut {
+
+    /** Profunditat màxima amb controls, nombre màxim de controls per profunditat i caselles buides per tram. */
+    public final static int MAX_PROF = 24, MAX_CONTROLS = 2, MIDA_TRAM = 10;
+
+    /** Llindar per defecte, en desviacions típiques. */
+    public final static double LLINDAR_PER_DEFECTE = 0.5;
+
+    private final static int NUM_TRAMS = 64 / MIDA_TRAM + 1;
+    private final static String PROPIETAT_PROBCUT = "npc.probcut", RECURS_PROBCUT = "probcut.txt";
+
+    private final int[][] profCurta;
+    private final double[][][] a, b, sigma;
+    private final int[][][] mostres;
+    private final double llindar;
+
+    /**
+     * Constructora d'uns paràmetres buits (sense cap control), amb el llindar per defecte.
+     */
+    public ProbCut() {
+
+        profCurta = new int[MAX_PROF + 1][MAX_CONTROLS];
+        for (int[] controls : profCurta) Arrays.fill(controls, -1);
+        a = new double[NUM_TRAMS][MAX_PROF + 1][MAX_CONTROLS];
+        b = new double[NUM_TRAMS][MAX_PROF + 1][MAX_CONTROLS];
+        sigma = new double[NUM_TRAMS][MAX_PROF + 1][MAX_CONTROLS];
+        mostres = new int[NUM_TRAMS][MAX_PROF + 1][MAX_CONTROLS];
+        llindar = LLINDAR_PER_DEFECTE;
+    }
+
+    /**
+     * Constructora que comparteix els paràmetres d'un altre objecte amb un llindar diferent.
+     * @param pc Paràmetres.
+     * @param llindar Llindar en desviacions típiques.
+     */
+    private ProbCut(ProbCut pc, double llindar) {
+
+        profCurta = pc.profCurta;
+        a = pc.a;
+        b = pc.b;
+        sigma = pc.sigma;
+        mostres = pc.mostres;
+        this.llindar = llindar;
+    }
+
+    /**
+     * Funció que retorna els mateixos paràmetres amb un altre llindar. Com més petit, més talls i més risc.
+     * @param llindar Llindar en desviacions típiques.
+     * @return Paràmetres amb el llindar indicat.
+     */
+    public ProbCut ambLlindar(double llindar) {
+        return new ProbCut(this, llindar);
+    }
+
+    /**
+     * Funció que retorna el llindar en desviacions típiques.
+     * @return Llindar.
+     */
+    public double getLlindar() {
+        return llindar;
+    }
+
+    /**
+     * Funció que carrega els paràmetres del fitxer indicat a la propietat del sistema "npc.probcut" o, si no n'hi ha,
+     * del recurs "probcut.txt" al costat d'aquesta classe.
+     * @return Paràmetres, o null si no se'n troben.
+     */
+    public static ProbCut carregaPerDefecte() {
+
+        String fitxer = System.getProperty(PROPIETAT_PROBCUT);
+        try {
+            if (fitxer != null) {
+                try (Reader in = new FileReader(fitxer, StandardCharsets.UTF_8)) {
+                    return carrega(in);
+                }
+            }
+            InputStream recurs = ProbCut.class.getResourceAsStream(RECURS_PROBCUT);
+            if (recurs == null) return null;
+            try (Reader in = new InputStreamReader(recurs, StandardCharsets.UTF_8)) {
+                return carrega(in);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("No s'han pogut carregar els paràmetres de ProbCut (" + e.getMessage() + ")");
+            return null;
+        }
+    }
+
+    /**
+     * Funció que llegeix els paràmetres en format text. Les línies buides o que comencen per '#' s'ignoren.
+     * @param in Entrada.
+     * @return Paràmetres.
+     * @throws IOException Si no es pot llegir l'entrada o una línia no és vàlida.
+     */
+    public static ProbCut carrega(Reader in) throws IOException {
+
+        ProbCut pc = new ProbCut();
+        BufferedReader linies = new BufferedReader(in);
+        String linia;
+        while ((linia = linies.readLine()) != null) {
+            linia = linia.trim();
+            if (linia.isEmpty() || linia.startsWith("#")) continue;
+            String[] camps = linia.split("\\s+");
+            if (camps.length < 6) throw new IOException("Línia de ProbCut no vàlida: " + linia);
+            pc.afegeix(Integer.parseInt(camps[0]), Integer.parseInt(camps[1]), Integer.parseInt(camps[2]),
+                       Double.parseDouble(camps[3]), Double.parseDouble(camps[4]), Double.parseDouble(camps[5]),
+                       (camps.length > 6) ? Integer.parseInt(camps[6]) : 0);
+        }
+
+        return pc;
+    }
+
+    /**
+     * Funció que escriu els paràmetres en el format que llegeix carrega.
+     * @param out Sortida.
+     */
+    public void escriu(PrintWriter out) {
+
+        out.println("# d dc tram a b sigma n");
+        for (int d = 0; d <= MAX_PROF; d++)
+            for (int k = 0; k < MAX_CONTROLS && profCurta[d][k] >= 0; k++)
+                for (int t = 0; t < NUM_TRAMS; t++)
+                    if (a[t][d][k] > 0)
+                        out.println(String.format(Locale.ROOT, "%d %d %d %.4f %.2f %.2f %d", d, profCurta[d][k], t,
+                                                  a[t][d][k], b[t][d][k], sigma[t][d][k], mostres[t][d][k]));
+    }
+
+    /**
+     * Funció que afegeix els paràmetres d'un control. Els controls d'una profunditat es guarden ordenats
+     * per la profunditat de la cerca curta.
+     * @param d Profunditat de la cerca que es vol evitar.
+     * @param dc Profunditat de la cerca curta (1..d-1).
+     * @param tram Tram de caselles buides (buides / MIDA_TRAM).
+     * @param a Pendent de la regressió (ha de ser positiva).
+     * @param b Terme independent de la regressió.
+     * @param sigma Desviació típica de l'error de la regressió.
+     * @param n Nombre de mostres de la regressió (només informatiu).
+     */
+    public void afegeix(int d, int dc, int tram, double a, double b, double sigma, int n) {
+
+        if (d > MAX_PROF || dc < 1 || dc >= d || tram < 0 || tram >= NUM_TRAMS || a <= 0 || sigma < 0)
+            throw new IllegalArgumentException("Control de ProbCut no vàlid: " + d + " " + dc + " " + tram);
+        int k = 0;
+        while (k < MAX_CONTROLS && profCurta[d][k] >= 0 && profCurta[d][k] != dc) k++;
+        if (k == MAX_CONTROLS) throw new IllegalArgumentException("Massa controls de ProbCut a profunditat " + d);
+        profCurta[d][k] = dc;
+        this.a[tram][d][k] = a;
+        this.b[tram][d][k] = b;
+        this.sigma[tram][d][k] = sigma;
+        mostres[tram][d][k] = n;
+        for (; k > 0 && profCurta[d][k - 1] > profCurta[d][k]; k--) intercanvia(d, k - 1, k);
+    }
+
+    /**
+     * Funció que intercanvia dos controls d'una profunditat, amb els paràmetres de tots els trams.
+     * @param d Profunditat.
+     * @param i Índex d'un control.
+     * @param j Índex de l'altre control.
+     */
+    private void intercanvia(int d, int i, int j) {
+
+        int aux = profCurta[d][i]; profCurta[d][i] = profCurta[d][j]; profCurta[d][j] = aux;
+        for (int t = 0; t < NUM_TRAMS; t++) {
+            double x;
+            x = a[t][d][i];     a[t][d][i] = a[t][d][j];         a[t][d][j] = x;
+            x = b[t][d][i];     b[t][d][i] = b[t][d][j];         b[t][d][j] = x;
+            x = sigma[t][d][i]; sigma[t][d][i] = sigma[t][d][j]; sigma[t][d][j] = x;
+            int n = mostres[t][d][i]; mostres[t][d][i] = mostres[t][d][j]; mostres[t][d][j] = n;
+        }
+    }
+
+    /**
+     * Funció que retorna la profunditat de la cerca curta d'un control.
+     * @param d Profunditat de la cerca que es vol evitar.
+     * @param k Índex del control (0..MAX_CONTROLS-1).
+     * @return Profunditat de la cerca curta, o -1 si no hi ha aquest control.
+     */
+    public int profCurta(int d, int k) {
+        return (d <= MAX_PROF) ? profCurta[d][k] : -1;
+    }
+
+    /**
+     * Funció que retorna la cota de la cerca curta per provar que el valor a profunditat d arribarà a beta:
+     * si la cerca curta val com a mínim la cota, es pot tallar.
+     * @param buides Caselles buides de la posició.
+     * @param d Profunditat de la cerca que es vol evitar.
+     * @param k Índex del control.
+     * @param beta Cota superior de la finestra.
+     * @param signe 1 si els valors són del jugador que té el torn, -1 si són del contrari.
+     * @return Cota, o Integer.MAX_VALUE si no hi ha paràmetres per aquest tram.
+     */
+    public int cotaAlta(int buides, int d, int k, int beta, int signe) {
+
+        int t = buides / MIDA_TRAM;
+        if (a[t][d][k] <= 0) return Integer.MAX_VALUE;
+        return (int) Math.ceil((beta - signe * b[t][d][k] + llindar * sigma[t][d][k]) / a[t][d][k]);
+    }
+
+    /**
+     * Funció que retorna la cota de la cerca curta per provar que el valor a profunditat d no passarà d'alfa:
+     * si la cerca curta val com a molt la cota, es pot tallar.
+     * @param buides Caselles buides de la posició.
+     * @param d Profunditat de la cerca que es vol evitar.
+     * @param k Índex del control.
+     * @param alpha Cota inferior de la finestra.
+     * @param signe 1 si els valors són del jugador que té el torn, -1 si són del contrari.
+     * @return Cota, o Integer.MIN_VALUE si no hi ha paràmetres per aquest tram.
+     */
+    public int cotaBaixa(int buides, int d, int k, int alpha, int signe) {
+
+        int t = buides / MIDA_TRAM;
+        if (a[t][d][k] <= 0) return Integer.MIN_VALUE;
+        return (int) Math.floor((alpha - signe * b[t][d][k] - llindar * sigma[t][d][k]) / a[t][d][k]);
+    }
+
+}
@@ -0,0 +1,342 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Classe amb el format binari compacte per guardar posicions o partides, amb un escriptor seqüencial sobre un
+ * FileChannel i un lector que projecta el fitxer a memòria per trossos i no crea cap objecte per registre.
+ * El fitxer té una capçalera de 24 bytes (MAGIC, VERSIO, tipus, un enter reservat i el nombre de registres, que
+ * s'escriu en tancar l'escriptor) i registres d'un sol tipus:
+ *   POSICIONS: 17 bytes, el bitboard del jugador 1 (long), el del jugador 2 (long) i el torn (1 si tira el jugador 1).
+ *   PARTIDES: el nombre de moviments (byte) i la casella de cada moviment (byte), sense els passos, com la transcripció.
+ * El lector arriba fins al final del fitxer, de manera que també llegeix els registres sencers d'un fitxer que
+ * no s'ha acabat de tancar.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public final class RegistreBinari {
+
+    /** Identificador i versió del format. */
+    public final static int MAGIC = 0x4E504352, VERSIO = 1;
+
+    /** Tipus de registres del fitxer. */
+    public final static int POSICIONS = 1, PARTIDES = 2;
+
+    /** Mida en bytes de la capçalera i d'un registre de posició. */
+    public final static int MIDA_CAPCALERA = 24, MIDA_POSICIO = 17;
+
+    /** Nombre màxim de moviments d'una partida. */
+    public final static int MAX_MOVIMENTS = 60;
+
+    private final static int MIDA_BUFFER = 1 << 16, MIDA_SEGMENT = 1 << 30;
+
+    private RegistreBinari() {
+    }
+
+    /**
+     * Funció que comprova si un fitxer té la capçalera del format, per distingir-lo dels fitxers de text.
+     * @param fitxer Fitxer.
+     * @return Cert si és un registre binari.
+     * @throws IOException Si no es pot llegir el fitxer.
+     */
+    public static boolean esRegistre(Path fitxer) throws IOException {
+
+        try (FileChannel canal = FileChannel.open(fitxer, StandardOpenOption.READ)) {
+            ByteBuffer capcalera = ByteBuffer.allocate(4);
+            while (capcalera.hasRemaining() && canal.read(capcalera) >= 0) { }
+            return !capcalera.hasRemaining() && capcalera.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Classe que escriu registres en un fitxer nou a través d'un buffer directe.
+     */
+    public static class Escriptor implements AutoCloseable {
+
+        private final FileChannel canal;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(MIDA_BUFFER);
+        private final int tipus;
+        private long n = 0L;
+
+        /**
+         * Constructora que crea el fitxer (o el buida si ja existeix) i hi escriu la capçalera.
+         * @param fitxer Fitxer de sortida.
+         * @param tipus POSICIONS o PARTIDES.
+         * @throws IOException Si no es pot crear el fitxer.
+         */
+        public Escriptor(Path fitxer, int tipus) throws IOException {
+
+            if (tipus != POSICIONS && tipus != PARTIDES) throw new IllegalArgumentException("Tipus desconegut: " + tipus);
+            this.tipus = tipus;
+            canal = FileChannel.open(fitxer, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                     StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.putInt(MAGIC).putInt(VERSIO).putInt(tipus).putInt(0).putLong(0L);
+        }
+
+        /**
+         * Funció que escriu una posició.
+         * @param p1 Bitboard amb les peces del jugador 1.
+         * @param p2 Bitboard amb les peces del jugador 2.
+         * @param tornP1 Cert si li toca tirar al jugador 1.
+         * @throws IOException Si falla l'escriptura.
+         */
+        public void escriuPosicio(long p1, long p2, boolean tornP1) throws IOException {
+
+            if (tipus != POSICIONS) throw new IllegalStateException("El fitxer no és de posicions");
+            if (buffer.remaining() < MIDA_POSICIO) buida();
+            buffer.putLong(p1).putLong(p2).put((byte) (tornP1 ? 1 : 0));
+            n++;
+        }
+
+        /**
+         * Funció que escriu la posició d'un tauler.
+         * @param tb Tauler de bits.
+         * @throws IOException Si falla l'escriptura.
+         */
+        public void escriuPosicio(TaulerBits tb) throws IOException {
+            escriuPosicio(tb.getP1(), tb.getP2(), tb.isTornP1());
+        }
+
+        /**
+         * Funció que escriu una partida.
+         * @param moviments Caselles jugades, en ordre de joc.
+         * @param nMoviments Nombre de moviments (com a molt MAX_MOVIMENTS).
+         * @throws IOException Si falla l'escriptura.
+         * @throws IllegalArgumentException Si hi ha massa moviments o algun no és una casella (0..63): el lector
+         *                                  descartaria la partida.
+         */
+        public void escriuPartida(int[] moviments, int nMoviments) throws IOException {
+
+            if (tipus != PARTIDES) throw new IllegalStateException("El fitxer no és de partides");
+            if (nMoviments < 0 || nMoviments > MAX_MOVIMENTS) throw new IllegalArgumentException("Partida de " + nMoviments + " moviments");
+            for (int k = 0; k < nMoviments; k++)
+                if (moviments[k] < 0 || moviments[k] > 63) throw new IllegalArgumentException("Moviment " + k + " fora del tauler: " + moviments[k]);
+            if (buffer.remaining() < 1 + nMoviments) buida();
+            buffer.put((byte) nMoviments);
+            for (int k = 0; k < nMoviments; k++) buffer.put((byte) moviments[k]);
+            n++;
+        }
+
+        /**
+         * Funció que retorna el nombre de registres escrits.
+         * @return Nombre de registres.
+         */
+        public long getNumRegistres() {
+            return n;
+        }
+
+        /**
+         * Funció que escriu el contingut del buffer al fitxer.
+         * @throws IOException Si falla l'escriptura.
+         */
+        private void buida() throws IOException {
+
+            buffer.flip();
+            while (buffer.hasRemaining()) canal.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * Funció que escriu els registres pendents i el nombre de registres a la capçalera, i tanca el fitxer.
+         * @throws IOException Si falla l'escriptura.
+         */
+        @Override
+        public void close() throws IOException {
+
+            try {
+                buida();
+                buffer.putLong(n).flip();
+                long posicio = MIDA_CAPCALERA - Long.BYTES;
+                while (buffer.hasRemaining()) posicio += canal.write(buffer, posicio);
+            } finally {
+                canal.close();
+            }
+        }
+    }
+
+    /**
+     * Classe que recorre els registres d'un fitxer projectat a memòria. Els mètodes d'accés llegeixen el
+     * registre actual directament del fitxer; només es crea un MappedByteBuffer per cada MIDA_SEGMENT bytes.
+     */
+    public static class Lector implements AutoCloseable {
+
+        private final FileChannel canal;
+        private final long mida, nCapcalera;
+        private final int tipus;
+        private MappedByteBuffer segment;
+        private long base, seguent;
+        private int actual;
+
+        /**
+         * Constructora que obre el fitxer i en comprova la capçalera.
+         * @param fitxer Fitxer de registres.
+         * @throws IOException Si no es pot llegir el fitxer o no té el format esperat.
+         */
+        public Lector(Path fitxer) throws IOException {
+
+            canal = FileChannel.open(fitxer, StandardOpenOption.READ);
+            try {
+                mida = canal.size();
+                if (mida < MIDA_CAPCALERA) throw new IOException("Registre binari massa petit: " + mida);
+                projecta(0L);
+                if (segment.getInt(0) != MAGIC || segment.getInt(4) != VERSIO)
+                    throw new IOException("El fitxer no és un registre binari (versió " + VERSIO + ")");
+                tipus = segment.getInt(8);
+                if (tipus != POSICIONS && tipus != PARTIDES) throw new IOException("Tipus de registre desconegut: " + tipus);
+                nCapcalera = segment.getLong(16);
+            } catch (IOException e) {
+                canal.close();
+                throw e;
+            }
+            reinicia();
+        }
+
+        /**
+         * Funció que retorna el tipus dels registres del fitxer.
+         * @return POSICIONS o PARTIDES.
+         */
+        public int getTipus() {
+            return tipus;
+        }
+
+        /**
+         * Funció que retorna el nombre de registres del fitxer. Per les posicions es dedueix de la mida; per les
+         * partides és el de la capçalera (0 si l'escriptor no s'ha tancat).
+         * @return Nombre de registres.
+         */
+        public long getNumRegistres() {
+            return (tipus == POSICIONS) ? (mida - MIDA_CAPCALERA) / MIDA_POSICIO : nCapcalera;
+        }
+
+        /**
+         * Funció que torna al principi del fitxer.
+         */
+        public void reinicia() {
+            seguent = MIDA_CAPCALERA;
+            actual = -1;
+        }
+
+        /**
+         * Funció que avança al registre següent. Les partides de més de MAX_MOVIMENTS moviments (d'un fitxer
+         * malmès o d'un altre programa) se salten, perquè cap lector hagi de preveure vectors més llargs.
+         * @return Cert si hi ha un registre sencer; fals al final del fitxer.
+         * @throws IOException Si no es pot projectar el fitxer.
+         */
+        public boolean seguent() throws IOException {
+
+            int bytes = MIDA_POSICIO;
+            while (true) {
+                if (seguent >= mida) return false;
+                if (tipus != PARTIDES) break;
+                assegura(seguent, 1);
+                int n = segment.get((int) (seguent - base)) & 0xFF;
+                bytes = 1 + n;
+                if (n <= MAX_MOVIMENTS) break;
+                seguent += bytes;
+            }
+            if (seguent + bytes > mida) return false;
+            assegura(seguent, bytes);
+            actual = (int) (seguent - base);
+            seguent += bytes;
+
+            return true;
+        }
+
+        /**
+         * Funció que retorna el bitboard del jugador 1 de la posició actual.
+         * @return Bitboard del jugador 1.
+         */
+        public long getP1() {
+            return segment.getLong(actual);
+        }
+
+        /**
+         * Funció que retorna el bitboard del jugador 2 de la posició actual.
+         * @return Bitboard del jugador 2.
+         */
+        public long getP2() {
+            return segment.getLong(actual + 8);
+        }
+
+        /**
+         * Funció que retorna si a la posició actual li toca tirar al jugador 1.
+         * @return Cert si el torn és del jugador 1.
+         */
+        public boolean isTornP1() {
+            return segment.get(actual + 16) != 0;
+        }
+
+        /**
+         * Funció que posa la posició actual en un tauler, sense crear cap objecte.
+         * @param tb Tauler de bits on es posa la posició.
+         */
+        public void carrega(TaulerBits tb) {
+            tb.posa(getP1(), getP2(), isTornP1());
+        }
+
+        /**
+         * Funció que retorna el nombre de moviments de la partida actual.
+         * @return Nombre de moviments.
+         */
+        public int getNumMoviments() {
+            return segment.get(actual) & 0xFF;
+        }
+
+        /**
+         * Funció que retorna un moviment de la partida actual.
+         * @param k Índex del moviment (0..getNumMoviments()-1).
+         * @return Casella del moviment (índex de bit).
+         */
+        public int getMoviment(int k) {
+            return segment.get(actual + 1 + k);
+        }
+
+        /**
+         * Funció que copia els moviments de la partida actual.
+         * @param moviments Vector de destí (com a mínim de MAX_MOVIMENTS posicions).
+         * @return Nombre de moviments.
+         */
+        public int moviments(int[] moviments) {
+
+            int n = getNumMoviments();
+            for (int k = 0; k < n; k++) moviments[k] = segment.get(actual + 1 + k);
+
+            return n;
+        }
+
+        /**
+         * Funció que comprova que els bytes [desde, desde + bytes) són dins del segment projectat i, si no, en
+         * projecta un de nou que comenci a desde.
+         * @param desde Posició al fitxer.
+         * @param bytes Nombre de bytes.
+         * @throws IOException Si no es pot projectar el fitxer.
+         */
+        private void assegura(long desde, int bytes) throws IOException {
+            if (desde < base || desde + bytes > base + segment.capacity()) projecta(desde);
+        }
+
+        /**
+         * Funció que projecta a memòria un segment del fitxer.
+         * @param desde Posició al fitxer on comença el segment.
+         * @throws IOException Si no es pot projectar el fitxer.
+         */
+        private void projecta(long desde) throws IOException {
+            base = desde;
+            segment = canal.map(FileChannel.MapMode.READ_ONLY, desde, Math.min(MIDA_SEGMENT, mida - desde));
+        }
+
+        /**
+         * Funció que tanca el fitxer.
+         * @throws IOException Si no es pot tancar.
+         */
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+}
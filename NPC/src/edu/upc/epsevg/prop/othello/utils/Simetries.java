@@ -0,0 +1,230 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+/**
+ * Classe amb les 8 simetries del tauler d'Othello (rotacions i reflexions) aplicades a bitboards i caselles.
+ * La simetria s (0..7) primer transposa el tauler si té el bit 2, després inverteix les columnes (i -> 7-i)
+ * si té el bit 0 i finalment inverteix les files (j -> 7-j) si té el bit 1. La simetria 0 és la identitat.
+ * La forma canònica d'una posició és la de les 8 orientacions amb el parell de bitboards (propies, contraries)
+ * més petit, i totes les orientacions d'una mateixa posició tenen la mateixa forma canònica.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public final class Simetries {
+
+    /** Nombre de simetries del tauler. */
+    public final static int NUM_SIMETRIES = 8;
+
+    /** Valor de minBuides que desactiva les claus simètriques. */
+    public final static int SENSE_SIMETRIES = 65;
+
+    /** Simetria que retorna la funció simetria per indicar que s'ha de fer servir la clau Zobrist del tauler. */
+    public final static int SENSE_SIMETRIA = -1;
+
+    private final static String PROPIETAT_SIMETRIES = "npc.simetries";
+    private final static long CLAU_CONTRARI = 0x9E3779B97F4A7C15L, CLAU_TORN = 0x6A09E667F3BCC909L;
+    private final static long K1 = 0x5555555555555555L, K2 = 0x3333333333333333L, K4 = 0x0F0F0F0F0F0F0F0FL;
+
+    private final static byte CASELLES[][] = new byte[NUM_SIMETRIES][64];
+    private final static int INVERSES[] = new int[NUM_SIMETRIES];
+
+    static {
+        for (int s = 0; s < NUM_SIMETRIES; s++) {
+            for (int c = 0; c < 64; c++) {
+                int i = c & 7, j = c >>> 3;
+                if ((s & 4) != 0) { int aux = i; i = j; j = aux; }
+                if ((s & 1) != 0) i = 7 - i;
+                if ((s & 2) != 0) j = 7 - j;
+                CASELLES[s][c] = (byte) TaulerBits.casella(i, j);
+            }
+        }
+        for (int s = 0; s < NUM_SIMETRIES; s++) {
+            for (int t = 0; t < NUM_SIMETRIES; t++) {
+                int c = 0;
+                while (c < 64 && CASELLES[t][CASELLES[s][c]] == c) c++;
+                if (c == 64) INVERSES[s] = t;
+            }
+        }
+    }
+
+    private Simetries() {
+    }
+
+    /**
+     * Funció que aplica una simetria a un bitboard.
+     * @param b Bitboard.
+     * @param s Simetria (0..7).
+     * @return Bitboard transformat.
+     */
+    public static long transforma(long b, int s) {
+
+        if ((s & 4) != 0) b = AvaluacioPatrons.transposa(b);
+        if ((s & 1) != 0) b = inverteixColumnes(b);
+        if ((s & 2) != 0) b = Long.reverseBytes(b);
+
+        return b;
+    }
+
+    /**
+     * Funció que aplica una simetria a una casella.
+     * @param casella Índex de bit de la casella (0..63).
+     * @param s Simetria (0..7).
+     * @return Índex de bit de la casella transformada.
+     */
+    public static int transformaCasella(int casella, int s) {
+        return CASELLES[s][casella];
+    }
+
+    /**
+     * Funció que retorna la simetria inversa, la que desfà la transformació de s.
+     * @param s Simetria (0..7).
+     * @return Simetria inversa.
+     */
+    public static int inversa(int s) {
+        return INVERSES[s];
+    }
+
+    /**
+     * Funció que retorna la simetria que porta la posició a la seva forma canònica: la de parell
+     * (propies, contraries) més petit, comparant els bitboards sense signe.
+     * Calcula les 8 orientacions del primer bitboard amb una sola transposició, i només transforma el segon
+     * quan hi ha empat (posicions simètriques).
+     * @param p Bitboard del jugador que té el torn.
+     * @param o Bitboard del contrari.
+     * @return Simetria (0..7) que s'ha d'aplicar a la posició per obtenir la forma canònica.
+     */
+    public static int canonica(long p, long o) {
+
+        long c = inverteixColumnes(p), t = AvaluacioPatrons.transposa(p), tc = inverteixColumnes(t);
+        int millor = 0;
+        long mp = p, mo = o;
+        for (int s = 1; s < NUM_SIMETRIES; s++) {
+            long sp;
+            switch (s) {
+                case 1:  sp = c; break;
+                case 2:  sp = Long.reverseBytes(p); break;
+                case 3:  sp = Long.reverseBytes(c); break;
+                case 4:  sp = t; break;
+                case 5:  sp = tc; break;
+                case 6:  sp = Long.reverseBytes(t); break;
+                default: sp = Long.reverseBytes(tc); break;
+            }
+            int cmp = Long.compareUnsigned(sp, mp);
+            if (cmp > 0) continue;
+            long so = transforma(o, s);
+            if (cmp < 0 || Long.compareUnsigned(so, mo) < 0) {
+                millor = s; mp = sp; mo = so;
+            }
+        }
+
+        return millor;
+    }
+
+    /**
+     * Funció que retorna el representant d'un moviment d'una posició en forma canònica: la casella més petita entre
+     * les equivalents per les simetries que deixen la posició igual (per exemple, els 4 primers moviments de la
+     * posició inicial són el mateix). Així les estadístiques d'un mateix moviment no es reparteixen entre caselles.
+     * @param p Bitboard del jugador que té el torn, en forma canònica.
+     * @param o Bitboard del contrari, en forma canònica.
+     * @param casella Índex de bit del moviment a la forma canònica.
+     * @return Índex de bit del moviment equivalent més petit.
+     */
+    public static int movimentCanonic(long p, long o, int casella) {
+
+        int millor = casella;
+        for (int s = 1; s < NUM_SIMETRIES; s++)
+            if (transforma(p, s) == p && transforma(o, s) == o) millor = Math.min(millor, CASELLES[s][casella]);
+
+        return millor;
+    }
+
+    /**
+     * Funció que retorna la clau Zobrist de la forma canònica de la posició, que no depèn de l'orientació
+     * del tauler ni del color del jugador que té el torn.
+     * @param p Bitboard del jugador que té el torn.
+     * @param o Bitboard del contrari.
+     * @return Clau de la forma canònica.
+     */
+    public static long clauCanonica(long p, long o) {
+
+        int s = canonica(p, o);
+        return TaulerBits.calculaHash(transforma(p, s), transforma(o, s), true);
+    }
+
+    /**
+     * Funció que retorna la simetria amb què s'ha de calcular la clau de les taules de transposició per un tauler:
+     * la de la forma canònica (dels bitboards de cada jugador) si el tauler té com a mínim minBuides caselles buides,
+     * i SENSE_SIMETRIA si no. Per sota del llindar les posicions simètriques són rares i no compensa el cost.
+     * @param tb Tauler de bits.
+     * @param minBuides Mínim de caselles buides (SENSE_SIMETRIES per no fer-ho mai).
+     * @return Simetria (0..7) o SENSE_SIMETRIA.
+     */
+    public static int simetria(TaulerBits tb, int minBuides) {
+        return (tb.buides() >= minBuides) ? canonica(tb.getP1(), tb.getP2()) : SENSE_SIMETRIA;
+    }
+
+    /**
+     * Funció que retorna la clau de les taules de transposició d'un tauler. Amb SENSE_SIMETRIA és la clau Zobrist;
+     * si no, una barreja dels bitboards transformats per la simetria, més barata de calcular que la Zobrist, de
+     * manera que totes les orientacions d'una posició tenen la mateixa clau.
+     * @param tb Tauler de bits.
+     * @param s Simetria (0..7) que retorna la funció simetria, o SENSE_SIMETRIA.
+     * @return Clau del tauler.
+     */
+    public static long clau(TaulerBits tb, int s) {
+
+        if (s == SENSE_SIMETRIA) return tb.getHash();
+        long clau = barreja(transforma(tb.getP1(), s)) ^ barreja(transforma(tb.getP2(), s) + CLAU_CONTRARI);
+
+        return tb.isTornP1() ? clau : clau ^ CLAU_TORN;
+    }
+
+    /**
+     * Funció que aplica una simetria a un moviment guardat a les taules de transposició, si n'hi ha.
+     * @param moviment Índex de bit del moviment o TaulaTransposicio.SENSE_MOVIMENT.
+     * @param s Simetria (0..7) o SENSE_SIMETRIA.
+     * @return Moviment transformat.
+     */
+    public static int transformaMoviment(int moviment, int s) {
+        return (moviment == TaulaTransposicio.SENSE_MOVIMENT || s <= 0) ? moviment : CASELLES[s][moviment];
+    }
+
+    /**
+     * Funció que retorna el llindar de caselles buides de la propietat del sistema "npc.simetries", a partir del
+     * qual els cercadors fan servir claus simètriques. Si no hi és, no se'n fan servir.
+     * @return Mínim de caselles buides, o SENSE_SIMETRIES.
+     */
+    public static int minBuidesPerDefecte() {
+        return Integer.getInteger(PROPIETAT_SIMETRIES, SENSE_SIMETRIES);
+    }
+
+    /**
+     * Funció que barreja els bits d'un bitboard (finalitzador de MurmurHash3), perquè bitboards propers
+     * donin claus sense cap relació.
+     * @param x Bitboard.
+     * @return Valor barrejat.
+     */
+    private static long barreja(long x) {
+
+        x ^= x >>> 33;
+        x *= 0xFF51AFD7ED558CCDL;
+        x ^= x >>> 33;
+        x *= 0xC4CEB9FE1A85EC53L;
+        x ^= x >>> 33;
+
+        return x;
+    }
+
+    /**
+     * Funció que inverteix l'ordre de les columnes de cada fila (i -> 7-i).
+     * @param b Bitboard.
+     * @return Bitboard amb les columnes invertides.
+     */
+    private static long inverteixColumnes(long b) {
+
+        b = ((b >>> 1) & K1) | ((b & K1) << 1);
+        b = ((b >>> 2) & K2) | ((b & K2) << 2);
+        b = ((b >>> 4) & K4) | ((b & K4) << 4);
+
+        return b;
+    }
+
+}
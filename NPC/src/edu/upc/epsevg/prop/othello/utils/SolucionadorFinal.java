@@ -0,0 +1,326 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Classe que resol de forma exacta el final de la partida a partir d'un tauler de bits.
+ * Fa una cerca negamax alfa-beta fins al final de la partida i retorna la diferència de peces
+ * (o només victòria/empat/derrota) des del punt de vista del jugador que té el torn.
+ * Ordena els moviments per paritat de regió i per "fastest-first" (primer els que deixen menys
+ * moviments al contrari), i guarda cotes i millors moviments en una taula de transposició pròpia
+ * als nodes amb prou caselles buides. No crea cap objecte durant la cerca.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class SolucionadorFinal {
+
+    private final static long QUADRANTS[] = {0x000000000F0F0F0FL, 0x00000000F0F0F0F0L,
+                                             0x0F0F0F0F00000000L, 0xF0F0F0F000000000L};
+    private final static int BUIDES_FASTEST_FIRST = 7, BUIDES_TAULA = 9, MAX_BUIDES = 64, MIDA_TAULA_MB = 16;
+
+    private final boolean nomesGuanyador;
+    private final TaulaTransposicio TT = new TaulaTransposicio(MIDA_TAULA_MB);
+    private final int[][] llistes = new int[MAX_BUIDES + 1][40];
+    private final int[][] claus = new int[MAX_BUIDES + 1][40];
+    private BooleanSupplier aturar = () -> false;
+    private boolean aturat = false;
+    private long nodes = 0L, limitNodes = Long.MAX_VALUE;
+    private int valor = 0, millorArrel = -1, cotaBaixa = -64, cotaAlta = 64;
+
+    /**
+     * Constructora de la classe.
+     * @param nomesGuanyador Cert per calcular només victòria/empat/derrota (més ràpid), fals per la diferència exacta de peces.
+     */
+    public SolucionadorFinal(boolean nomesGuanyador) {
+        this.nomesGuanyador = nomesGuanyador;
+    }
+
+    /**
+     * Funció que busca el millor moviment del jugador que té el torn jugant perfectament fins al final.
+     * En mode exacte fa una cerca binària del valor amb finestres nul·les (la primera és la de victòria/derrota i la
+     * segona, si cal, la d'empat),
+     * que amb la taula de transposició és molt més ràpid que una única cerca amb la finestra completa.
+     * @param tb Tauler de bits que representa la partida d'Othello.
+     * @param ordre Moviments de l'arrel en l'ordre en que s'han de provar (per exemple, el millor de la cerca anterior primer).
+     * @param aturar Condició que es consulta periòdicament per abandonar la cerca.
+     * @return Índex de bit del millor moviment, o -1 si s'ha aturat sense demostrar-ne cap o no hi ha moviments.
+     */
+    public int millorMoviment(TaulerBits tb, int[] ordre, BooleanSupplier aturar) {
+        return millorMoviment(tb, ordre, Long.MAX_VALUE, aturar);
+    }
+
+    /**
+     * Funció que busca el millor moviment com millorMoviment, però s'atura en superar limitNodes nodes.
+     * El límit es comprova a cada node (la condició aturar, només periòdicament).
+     * @param tb Tauler de bits que representa la partida d'Othello.
+     * @param ordre Moviments de l'arrel en l'ordre en que s'han de provar.
+     * @param limitNodes Nombre màxim de nodes de la crida.
+     * @param aturar Condició que es consulta periòdicament per abandonar la cerca.
+     * @return Índex de bit del millor moviment, o -1 si s'ha aturat sense demostrar-ne cap o no hi ha moviments.
+     */
+    public int millorMoviment(TaulerBits tb, int[] ordre, long limitNodes, BooleanSupplier aturar) {
+        return millorMoviment(tb, ordre, limitNodes, aturar, false);
+    }
+
+    /**
+     * Funció que busca el millor moviment com millorMoviment amb límit de nodes i que, amb nomesSigne, només fa
+     * les cerques de la finestra de victòria/derrota i, si cal, la d'empat (molt més ràpides que la diferència exacta).
+     * Si s'atura, les cerques acabades es conserven: retorna el moviment que ha demostrat arribar com a mínim a
+     * getCotaInferior() (per exemple, una victòria quan ha acabat la primera finestra), o -1 si no n'hi ha cap.
+     * En mode només guanyador, aturar-se sempre retorna -1.
+     * @param tb Tauler de bits que representa la partida d'Othello.
+     * @param ordre Moviments de l'arrel en l'ordre en que s'han de provar.
+     * @param limitNodes Nombre màxim de nodes de la crida.
+     * @param aturar Condició que es consulta periòdicament per abandonar la cerca.
+     * @param nomesSigne Cert per aturar la cerca binària en saber si la posició és guanyada, empatada o perduda.
+     * @return Índex de bit del millor moviment demostrat, o -1 si no n'hi ha cap o no hi ha moviments.
+     */
+    public int millorMoviment(TaulerBits tb, int[] ordre, long limitNodes, BooleanSupplier aturar, boolean nomesSigne) {
+
+        this.aturar = aturar;
+        this.limitNodes = limitNodes;
+        aturat = false;
+        nodes = 0L;
+        TT.novaCerca();
+
+        long p = tb.propies(), o = tb.contraries();
+        if (ordre.length == 0) return -1;
+        
+        cotaBaixa = -64; cotaAlta = 64;
+        if (nomesGuanyador) {
+            valor = Integer.signum(arrel(p, o, ordre, -1, 1));
+            if (aturat) return -1;
+            cotaBaixa = cotaAlta = valor;
+            return millorArrel;
+        }
+        
+        int millor = -1;
+        while (cotaBaixa < cotaAlta && !(nomesSigne && signeConegut())) {
+            int mig = (cotaBaixa < 0 && cotaAlta > 0) ? 0 : (cotaBaixa < -1 && cotaAlta == 0) ? -1
+                    : Math.floorDiv(cotaBaixa + cotaAlta, 2);
+            int v = arrel(p, o, ordre, mig, mig + 1);
+            if (aturat) break;
+            if (v > mig) { cotaBaixa = v; millor = millorArrel; }
+            else cotaAlta = v;
+        }
+        if (!aturat && millor == -1) millor = millorArrel;
+        valor = (cotaAlta < 0 || millor == -1) ? cotaAlta : cotaBaixa;
+
+        return millor;
+    }
+    
+    /**
+     * Funció que retorna si les cotes del valor ja n'indiquen el signe (victòria, empat o derrota).
+     * @return Cert si el signe del valor és conegut.
+     */
+    private boolean signeConegut() {
+        return cotaBaixa > 0 || cotaAlta < 0 || (cotaBaixa == 0 && cotaAlta == 0);
+    }
+    
+    /**
+     * Funció que cerca tots els moviments de l'arrel dins la finestra (alpha, beta).
+     * Deixa a 'millorArrel' el moviment amb el millor valor.
+     * @param p Bitboard del jugador que té el torn.
+     * @param o Bitboard del contrari.
+     * @param ordre Moviments de l'arrel.
+     * @param alpha Paràmetre alfa.
+     * @param beta Paràmetre beta.
+     * @return Millor valor (fail-soft).
+     */
+    private int arrel(long p, long o, int[] ordre, int alpha, int beta) {
+        
+        int millor = Integer.MIN_VALUE;
+        millorArrel = ordre[0];
+        
+        for (int moviment : ordre) {
+            long girades = TaulerBits.calculaGirades(p, o, moviment);
+            int v = -negamax(o & ~girades, p | girades | (1L << moviment), -beta, -Math.max(alpha, millor), false);
+            if (aturat) return 0;
+            if (v > millor) {
+                millor = v; millorArrel = moviment;
+                if (millor >= beta) break;
+            }
+        }
+        
+        return millor;
+    }
+
+    /**
+     * Funció que buida la taula de transposició del solucionador, perquè la crida següent no depengui de les anteriors.
+     */
+    public void buida() {
+        TT.buida();
+    }
+
+    /**
+     * Funció que retorna el valor exacte (o el signe, en mode només guanyador) del darrer millor moviment calculat.
+     * Si només s'ha calculat el signe o la cerca s'ha aturat, és la cota inferior del moviment retornat o, si és una
+     * derrota o no n'ha retornat cap, la cota superior.
+     * @return Diferència de peces des del punt de vista del jugador que tenia el torn.
+     */
+    public int getValor() {
+        return valor;
+    }
+
+    /**
+     * Funció que retorna la cota inferior del valor de la posició demostrada a la darrera crida
+     * (igual a getValor() si s'ha acabat la cerca exacta).
+     * @return Cota inferior de la diferència de peces (-64 si no s'ha demostrat cap moviment).
+     */
+    public int getCotaInferior() {
+        return cotaBaixa;
+    }
+
+    /**
+     * Funció que retorna la cota superior del valor de la posició demostrada a la darrera crida.
+     * @return Cota superior de la diferència de peces (64 si cap cerca ha fallat per baix).
+     */
+    public int getCotaSuperior() {
+        return cotaAlta;
+    }
+
+    /**
+     * Funció que retorna el nombre de nodes explorats a la darrera crida.
+     * @return Nombre de nodes.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Funció que retorna si la darrera crida s'ha aturat abans d'acabar.
+     * @return Cert si la cerca s'ha aturat.
+     */
+    public boolean isAturat() {
+        return aturat;
+    }
+
+    /**
+     * Funció negamax alfa-beta fins al final de la partida.
+     * @param p Bitboard del jugador que té el torn.
+     * @param o Bitboard del contrari.
+     * @param alpha Paràmetre alfa.
+     * @param beta Paràmetre beta.
+     * @param passat Cert si el moviment anterior ha estat un pas.
+     * @return Diferència de peces final des del punt de vista del jugador que té el torn.
+     */
+    private int negamax(long p, long o, int alpha, int beta, boolean passat) {
+
+        if (++nodes > limitNodes || ((nodes & 0xFFF) == 0 && aturar.getAsBoolean())) aturat = true;
+        if (aturat) return 0;
+
+        long moviments = TaulerBits.generaMoviments(p, o);
+        if (moviments == 0) {
+            if (passat || TaulerBits.generaMoviments(o, p) == 0) return resultat(p, o);
+            return -negamax(o, p, -beta, -alpha, true);
+        }
+
+        long buides = ~(p | o);
+        int nBuides = Long.bitCount(buides);
+        int alphaInicial = alpha, movTT = TaulaTransposicio.SENSE_MOVIMENT;
+        long clau = 0L;
+        
+        if (nBuides >= BUIDES_TAULA) {
+            clau = clau(p, o);
+            long entrada = TT.consulta(clau);
+            if (entrada != 0) {
+                int v = TaulaTransposicio.valor(entrada), cota = TaulaTransposicio.cota(entrada);
+                if (cota == TaulaTransposicio.EXACTA) return v;
+                else if (cota == TaulaTransposicio.INFERIOR) alpha = Math.max(alpha, v);
+                else beta = Math.min(beta, v);
+                if (alpha >= beta) return v;
+                movTT = TaulaTransposicio.moviment(entrada);
+            }
+        }
+        
+        int n = ordena(p, o, moviments, buides, nBuides, movTT);
+        int[] llista = llistes[nBuides];
+        int millor = Integer.MIN_VALUE, millorMov = TaulaTransposicio.SENSE_MOVIMENT;
+
+        for (int k = 0; k < n; k++) {
+            int moviment = llista[k];
+            long girades = TaulerBits.calculaGirades(p, o, moviment);
+            int v = -negamax(o & ~girades, p | girades | (1L << moviment), -beta, -alpha, false);
+            if (aturat) return 0;
+            if (v > millor) {
+                millor = v; millorMov = moviment;
+                if (v > alpha) {
+                    alpha = v;
+                    if (alpha >= beta) break;
+                }
+            }
+        }
+        
+        if (nBuides >= BUIDES_TAULA) {
+            int cota = (millor <= alphaInicial) ? TaulaTransposicio.SUPERIOR
+                     : (millor >= beta) ? TaulaTransposicio.INFERIOR : TaulaTransposicio.EXACTA;
+            TT.guarda(clau, nBuides, cota, millor, millorMov);
+        }
+
+        return millor;
+    }
+
+    /**
+     * Funció que ordena els moviments d'un node a la llista del seu nombre de caselles buides.
+     * Primer els que estan en una regió amb un nombre senar de caselles buides (paritat) i, si queden
+     * prou caselles buides, per nombre de moviments que deixen al contrari (fastest-first).
+     * @param p Bitboard del jugador que té el torn.
+     * @param o Bitboard del contrari.
+     * @param moviments Bitboard amb els moviments legals.
+     * @param buides Bitboard de les caselles buides.
+     * @param nBuides Nombre de caselles buides.
+     * @param movTT Millor moviment de la taula de transposició (es prova el primer) o TaulaTransposicio.SENSE_MOVIMENT.
+     * @return Nombre de moviments de la llista.
+     */
+    private int ordena(long p, long o, long moviments, long buides, int nBuides, int movTT) {
+
+        long senars = 0;
+        for (long q : QUADRANTS)
+            if ((Long.bitCount(buides & q) & 1) != 0) senars |= q;
+
+        int[] llista = llistes[nBuides], clau = claus[nBuides];
+        int n = 0;
+        for (long m = moviments; m != 0; m &= m - 1) {
+            int c = Long.numberOfTrailingZeros(m);
+            int v = ((senars >>> c) & 1) == 0 ? 1 : 0;
+            if (c == movTT) v = Integer.MIN_VALUE;
+            else if (nBuides >= BUIDES_FASTEST_FIRST) {
+                long girades = TaulerBits.calculaGirades(p, o, c);
+                long np = p | girades | (1L << c), no = o & ~girades;
+                v += Long.bitCount(TaulerBits.generaMoviments(no, np)) << 1;
+            }
+
+            int i = n++;
+            while (i > 0 && clau[i - 1] > v) {
+                llista[i] = llista[i - 1]; clau[i] = clau[i - 1]; i--;
+            }
+            llista[i] = c; clau[i] = v;
+        }
+
+        return n;
+    }
+
+    /**
+     * Funció que calcula la clau de la taula de transposició a partir dels dos bitboards.
+     * No fa servir les claus Zobrist perquè aquí no es mantenen de forma incremental.
+     * @param p Bitboard del jugador que té el torn.
+     * @param o Bitboard del contrari.
+     * @return Clau de 64 bits.
+     */
+    private static long clau(long p, long o) {
+        long z = p * 0x9E3779B97F4A7C15L + Long.rotateLeft(o, 31) * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ (z >>> 29)) * 0xBF58476D1CE4E5B9L;
+        return z ^ (z >>> 32);
+    }
+
+    /**
+     * Funció que retorna el resultat d'una partida acabada.
+     * @param p Bitboard del jugador que té el torn.
+     * @param o Bitboard del contrari.
+     * @return Diferència de peces, o el seu signe en mode només guanyador.
+     */
+    private int resultat(long p, long o) {
+        int diferencia = Long.bitCount(p) - Long.bitCount(o);
+        return nomesGuanyador ? Integer.signum(diferencia) : diferencia;
+    }
+
+}
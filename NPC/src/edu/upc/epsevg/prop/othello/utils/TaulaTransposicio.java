@@ -0,0 +1,174 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+/**
+ * Classe que representa una taula de transposició de mida fixa guardada en un vector de long.
+ * Cada entrada ocupa dos long: la clau Zobrist XOR les dades, i les dades empaquetades
+ * (valor, profunditat, tipus de cota, millor moviment i edat).
+ * Diversos fils la poden consultar i escriure sense bloquejos: si una entrada queda a mig escriure
+ * per dos fils alhora, el XOR no coincideix amb la clau i l'entrada es descarta.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class TaulaTransposicio {
+
+    public final static int EXACTA = 1, INFERIOR = 2, SUPERIOR = 3;
+    public final static int SENSE_MOVIMENT = 64;
+
+    /**
+     * Valor que els cercadors combinen (XOR) amb la clau quan els valors són des del punt de vista del jugador 2.
+     * Així un mateix cercador pot jugar amb tots dos colors (per exemple, en partides successives) sense
+     * reaprofitar valors calculats per l'altre jugador.
+     */
+    public final static long CLAU_PERSPECTIVA = 0x9E3779B97F4A7C15L;
+
+    private final static int BITS_PROF = 32, BITS_COTA = 40, BITS_MOV = 42, BITS_EDAT = 49;
+    private final static int MAX_ENTRADES = 1 << 29;
+
+    private final long[] taula;
+    private final int mascara;
+    private volatile int edat = 0;
+
+    /**
+     * Constructora de la classe.
+     * @param midaMB Mida màxima de la taula en MB (s'arrodoneix a la potència de 2 inferior, com a molt 8192 MB).
+     */
+    public TaulaTransposicio(int midaMB) {
+        long entrades = Math.max(1L, ((long) midaMB << 20) / 16);
+        int n = Integer.highestOneBit((int) Math.min(entrades, MAX_ENTRADES));
+        taula = new long[2 * n];
+        mascara = n - 1;
+    }
+
+    /**
+     * Funció que busca l'entrada associada a la clau.
+     * @param clau Valor de hash Zobrist del tauler.
+     * @return Dades empaquetades de l'entrada, o 0 si no hi és.
+     */
+    public long consulta(long clau) {
+        int i = index(clau);
+        long dades = taula[i + 1];
+        if (dades == 0) return 0L;
+        if ((taula[i] ^ dades) != clau) return 0L;
+        return dades;
+    }
+
+    /**
+     * Funció que guarda una entrada. Es reemplaça l'entrada existent si és d'una cerca anterior,
+     * si és de la mateixa posició o si s'ha cercat a menys profunditat que la nova.
+     * @param clau Valor de hash Zobrist del tauler.
+     * @param prof Profunditat restant amb la que s'ha cercat el tauler.
+     * @param cota Tipus de cota del valor (EXACTA, INFERIOR o SUPERIOR).
+     * @param valor Valor del tauler.
+     * @param moviment Millor moviment trobat (0..63) o SENSE_MOVIMENT.
+     */
+    public void guarda(long clau, int prof, int cota, int valor, int moviment) {
+        int i = index(clau);
+        long dades = taula[i + 1];
+        boolean mateixa = (dades != 0 && (taula[i] ^ dades) == clau);
+        if (dades == 0 || mateixa || edat(dades) != edat || prof >= profunditat(dades)) {
+            if (moviment == SENSE_MOVIMENT && mateixa) moviment = moviment(dades);
+            long noves = empaqueta(prof, cota, valor, moviment);
+            taula[i] = clau ^ noves;
+            taula[i + 1] = noves;
+        }
+    }
+
+    /**
+     * Funció que indica que comença una nova cerca. Les entrades de cerques anteriors es continuen consultant,
+     * però passen a ser les primeres a reemplaçar.
+     */
+    public void novaCerca() {
+        edat = (edat + 1) & 0xFF;
+    }
+
+    /**
+     * Funció que buida la taula i en torna l'edat a 0, com acabada de crear.
+     */
+    public void buida() {
+        java.util.Arrays.fill(taula, 0L);
+        edat = 0;
+    }
+
+    /**
+     * Funció que indica si la posició de la clau està ocupada per una altra clau (o per una entrada a mig escriure).
+     * La taula no compta les col·lisions perquè les consultes no escriguin estat compartit entre fils: cada
+     * cercador la crida després d'una consulta sense resultat i les compta als seus comptadors.
+     * @param clau Valor de hash Zobrist del tauler.
+     * @return Cert si hi ha una col·lisió.
+     */
+    public boolean colisio(long clau) {
+        int i = index(clau);
+        long dades = taula[i + 1];
+        return dades != 0 && (taula[i] ^ dades) != clau;
+    }
+
+    /**
+     * Funció que retorna el valor guardat a una entrada.
+     * @param dades Dades empaquetades de l'entrada.
+     * @return Valor del tauler.
+     */
+    public static int valor(long dades) {
+        return (int) dades;
+    }
+
+    /**
+     * Funció que retorna la profunditat restant guardada a una entrada.
+     * @param dades Dades empaquetades de l'entrada.
+     * @return Profunditat amb la que es va cercar el tauler.
+     */
+    public static int profunditat(long dades) {
+        return (int) (dades >>> BITS_PROF) & 0xFF;
+    }
+
+    /**
+     * Funció que retorna el tipus de cota guardat a una entrada.
+     * @param dades Dades empaquetades de l'entrada.
+     * @return EXACTA, INFERIOR o SUPERIOR.
+     */
+    public static int cota(long dades) {
+        return (int) (dades >>> BITS_COTA) & 0x3;
+    }
+
+    /**
+     * Funció que retorna el millor moviment guardat a una entrada.
+     * @param dades Dades empaquetades de l'entrada.
+     * @return Índex de bit del moviment (0..63) o SENSE_MOVIMENT.
+     */
+    public static int moviment(long dades) {
+        return (int) (dades >>> BITS_MOV) & 0x7F;
+    }
+
+    /**
+     * Funció que retorna l'edat (nombre de cerca) guardada a una entrada.
+     * @param dades Dades empaquetades de l'entrada.
+     * @return Edat de l'entrada.
+     */
+    private static int edat(long dades) {
+        return (int) (dades >>> BITS_EDAT) & 0xFF;
+    }
+
+    /**
+     * Funció que empaqueta els camps d'una entrada en un long. La cota mai és 0, de manera que una entrada vàlida mai val 0.
+     * @param prof Profunditat restant.
+     * @param cota Tipus de cota.
+     * @param valor Valor del tauler.
+     * @param moviment Millor moviment.
+     * @return Dades empaquetades.
+     */
+    private long empaqueta(int prof, int cota, int valor, int moviment) {
+        return (valor & 0xFFFFFFFFL)
+             | ((long) Math.min(prof, 0xFF) << BITS_PROF)
+             | ((long) cota << BITS_COTA)
+             | ((long) moviment << BITS_MOV)
+             | ((long) edat << BITS_EDAT);
+    }
+
+    /**
+     * Funció que retorna la posició del vector on comença l'entrada de la clau.
+     * @param clau Valor de hash Zobrist del tauler.
+     * @return Índex al vector 'taula'.
+     */
+    private int index(long clau) {
+        return ((int) (clau ^ (clau >>> 32)) & mascara) << 1;
+    }
+
+}
@@ -0,0 +1,381 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+import java.awt.Point;
+import java.util.Random;
+import edu.upc.epsevg.prop.othello.CellType;
+
+/**
+ * Classe que representa un tauler d'Othello amb dos bitboards (un long per jugador).
+ * La casella (i,j) correspon al bit i + j*8, igual que als BitSets de GameStatus.
+ * Genera moviments i gira peces amb desplaçaments i màscares, sense crear objectes.
+ * També manté de forma incremental el valor de hash Zobrist del tauler (peces i torn).
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public class TaulerBits {
+
+    private final static long COL_A = 0x0101010101010101L, COL_H = 0x8080808080808080L;
+
+    private final static int DESPLACAMENTS[] = {1, 7, 8, 9};
+    private final static long MASC_ESQ[] = {~COL_A, ~COL_H, -1L, ~COL_A};
+    private final static long MASC_DRE[] = {~COL_H, ~COL_A, -1L, ~COL_H};
+
+    private final static long LLAVOR = 0x4F7468656C6C6FL;
+    private final static long[][] taulaClaus = generaTaulaClaus();
+    private final static long[] taulaCanvis = generaTaulaCanvis();
+    private final static long CLAU_TORN = taulaClaus[2][0];
+
+    private long p1, p2, hash;
+    private boolean tornP1;
+
+    /**
+     * Constructora a partir dels bitboards de cada jugador.
+     * @param p1 Bitboard amb les peces del jugador 1.
+     * @param p2 Bitboard amb les peces del jugador 2.
+     * @param tornP1 Cert si li toca tirar al jugador 1.
+     */
+    public TaulerBits(long p1, long p2, boolean tornP1) {
+        this.p1 = p1;
+        this.p2 = p2;
+        this.tornP1 = tornP1;
+        this.hash = calculaHash(p1, p2, tornP1);
+    }
+
+    /**
+     * Constructora per còpia.
+     * @param tb Tauler que es copia.
+     */
+    public TaulerBits(TaulerBits tb) {
+        copia(tb);
+    }
+
+    /**
+     * Constructora a partir d'un GameStatusNPC. És la conversió que es fa a la frontera amb el framework.
+     * @param gs Tauler que representa la partida d'Othello.
+     */
+    public TaulerBits(GameStatusNPC gs) {
+        for (int i = 0; i < 8; i++) {
+            for (int j = 0; j < 8; j++) {
+                CellType c = gs.getPos(i, j);
+                if (c == CellType.PLAYER1)      p1 |= 1L << casella(i, j);
+                else if (c == CellType.PLAYER2) p2 |= 1L << casella(i, j);
+            }
+        }
+        tornP1 = (gs.getCurrentPlayer() == CellType.PLAYER1);
+        hash = calculaHash(p1, p2, tornP1);
+        gs.setHashValue(hash);
+    }
+
+    /**
+     * Funció que retorna el tauler de la posició inicial (d5 i e4 del jugador 1, d4 i e5 del jugador 2, tira el jugador 1).
+     * @return Tauler de bits de la posició inicial.
+     */
+    public static TaulerBits inicial() {
+        return new TaulerBits((1L << casella(3, 4)) | (1L << casella(4, 3)), (1L << casella(3, 3)) | (1L << casella(4, 4)), true);
+    }
+
+    /**
+     * Funció que retorna l'índex de bit de la casella (i,j).
+     * @param i Columna nº i
+     * @param j Fila nº j
+     * @return Índex del bit (0..63) que representa la casella.
+     */
+    public static int casella(int i, int j) {
+        return i + j*8;
+    }
+
+    /**
+     * Funció que retorna l'índex de bit del punt p.
+     * @param p Punt del tauler.
+     * @return Índex del bit (0..63) que representa el punt.
+     */
+    public static int casella(Point p) {
+        return casella(p.x, p.y);
+    }
+
+    /**
+     * Funció que converteix un índex de bit en el punt que espera el framework.
+     * @param casella Índex del bit (0..63).
+     * @return Punt (i,j) corresponent.
+     */
+    public static Point punt(int casella) {
+        return new Point(casella & 7, casella >>> 3);
+    }
+
+    /**
+     * Funció que retorna el bitboard de les peces del jugador 1.
+     * @return Bitboard del jugador 1.
+     */
+    public long getP1() {
+        return p1;
+    }
+
+    /**
+     * Funció que retorna el bitboard de les peces del jugador 2.
+     * @return Bitboard del jugador 2.
+     */
+    public long getP2() {
+        return p2;
+    }
+
+    /**
+     * Funció que retorna el valor de hash Zobrist del tauler, que té en compte el torn.
+     * @return Valor de hash Zobrist del tauler.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Funció que retorna si li toca tirar al jugador 1.
+     * @return Cert si el torn és del jugador 1.
+     */
+    public boolean isTornP1() {
+        return tornP1;
+    }
+
+    /**
+     * Funció que retorna el jugador a qui li toca tirar.
+     * @return Jugador que té el torn.
+     */
+    public CellType getTorn() {
+        return tornP1 ? CellType.PLAYER1 : CellType.PLAYER2;
+    }
+
+    /**
+     * Funció que retorna el bitboard de les peces del jugador indicat.
+     * @param player Jugador.
+     * @return Bitboard del jugador.
+     */
+    public long peces(CellType player) {
+        return (player == CellType.PLAYER1) ? p1 : p2;
+    }
+
+    /**
+     * Funció que retorna el bitboard del jugador que té el torn.
+     * @return Bitboard del jugador que té el torn.
+     */
+    public long propies() {
+        return tornP1 ? p1 : p2;
+    }
+
+    /**
+     * Funció que retorna el bitboard del jugador que no té el torn.
+     * @return Bitboard del contrari.
+     */
+    public long contraries() {
+        return tornP1 ? p2 : p1;
+    }
+
+    /**
+     * Funció que retorna el nombre de caselles buides.
+     * @return Nombre de caselles buides.
+     */
+    public int buides() {
+        return 64 - Long.bitCount(p1 | p2);
+    }
+
+    /**
+     * Funció que retorna la màscara de moviments legals del jugador que té el torn.
+     * @return Bitboard amb un bit per cada moviment legal.
+     */
+    public long moviments() {
+        return generaMoviments(propies(), contraries());
+    }
+
+    /**
+     * Funció que comprova si cap dels dos jugadors pot tirar.
+     * @return Cert si la partida ha acabat.
+     */
+    public boolean finalPartida() {
+        return moviments() == 0 && generaMoviments(contraries(), propies()) == 0;
+    }
+
+    /**
+     * Funció que copia l'estat d'un altre tauler en aquest, sense crear cap objecte.
+     * @param tb Tauler que es copia.
+     */
+    public void copia(TaulerBits tb) {
+        p1 = tb.p1;
+        p2 = tb.p2;
+        tornP1 = tb.tornP1;
+        hash = tb.hash;
+    }
+
+    /**
+     * Funció que posa una posició en aquest tauler, sense crear cap objecte.
+     * @param p1 Bitboard amb les peces del jugador 1.
+     * @param p2 Bitboard amb les peces del jugador 2.
+     * @param tornP1 Cert si li toca tirar al jugador 1.
+     */
+    public void posa(long p1, long p2, boolean tornP1) {
+        this.p1 = p1;
+        this.p2 = p2;
+        this.tornP1 = tornP1;
+        this.hash = calculaHash(p1, p2, tornP1);
+    }
+
+    /**
+     * Funció que col·loca una peça del jugador que té el torn, gira les peces corresponents i passa el torn.
+     * El valor retornat, juntament amb la casella, és el registre que necessita desfesMoviment.
+     * @param casella Índex del bit on es col·loca la peça (ha de ser un moviment legal).
+     * @return Bitboard de les peces girades.
+     */
+    public long fesMoviment(int casella) {
+        long girades = calculaGirades(propies(), contraries(), casella);
+        long peca = 1L << casella;
+        if (tornP1) { p1 |= girades | peca; p2 &= ~girades; }
+        else        { p2 |= girades | peca; p1 &= ~girades; }
+        hash ^= taulaClaus[tornP1 ? 0 : 1][casella] ^ hashGirades(girades) ^ CLAU_TORN;
+        tornP1 = !tornP1;
+        return girades;
+    }
+
+    /**
+     * Funció que desfà un moviment fet amb fesMoviment i retorna el torn al jugador que l'havia fet.
+     * @param casella Índex del bit on s'havia col·locat la peça.
+     * @param girades Bitboard de les peces girades que havia retornat fesMoviment.
+     */
+    public void desfesMoviment(int casella, long girades) {
+        long peca = 1L << casella;
+        tornP1 = !tornP1;
+        if (tornP1) { p1 &= ~(girades | peca); p2 |= girades; }
+        else        { p2 &= ~(girades | peca); p1 |= girades; }
+        hash ^= taulaClaus[tornP1 ? 0 : 1][casella] ^ hashGirades(girades) ^ CLAU_TORN;
+    }
+
+    /**
+     * Funció que passa el torn sense col·locar cap peça. És la seva pròpia inversa.
+     */
+    public void passa() {
+        tornP1 = !tornP1;
+        hash ^= CLAU_TORN;
+    }
+
+    /**
+     * Funció que retorna la contribució al hash de girar les peces indicades (treure el color antic i posar el nou).
+     * @param girades Bitboard de les peces girades.
+     * @return Valor que s'ha de fer XOR amb el hash.
+     */
+    private static long hashGirades(long girades) {
+        long h = 0;
+        for (long b = girades; b != 0; b &= b - 1)
+            h ^= taulaCanvis[Long.numberOfTrailingZeros(b)];
+        return h;
+    }
+
+    /**
+     * Funció que calcula des de zero el valor de hash Zobrist d'un tauler.
+     * @param p1 Bitboard del jugador 1.
+     * @param p2 Bitboard del jugador 2.
+     * @param tornP1 Cert si li toca tirar al jugador 1.
+     * @return Valor de hash Zobrist del tauler.
+     */
+    public static long calculaHash(long p1, long p2, boolean tornP1) {
+        long h = tornP1 ? 0L : CLAU_TORN;
+        for (long b = p1; b != 0; b &= b - 1) h ^= taulaClaus[0][Long.numberOfTrailingZeros(b)];
+        for (long b = p2; b != 0; b &= b - 1) h ^= taulaClaus[1][Long.numberOfTrailingZeros(b)];
+        return h;
+    }
+
+    /**
+     * Funció que genera la taula de claus Zobrist (una per jugador i casella, i una pel torn).
+     * La llavor és fixa perquè les claus siguin les mateixes a totes les instàncies i execucions.
+     * @return Taula de 3x64 nombres aleatoris de tipus Long.
+     */
+    private static long[][] generaTaulaClaus() {
+        Random R = new Random(LLAVOR);
+        long[][] taula = new long[3][64];
+        for (int k = 0; k < 3; k++) {
+            for (int c = 0; c < 64; c++) {
+                taula[k][c] = R.nextLong();
+            }
+        }
+        return taula;
+    }
+
+    /**
+     * Funció que genera, per cada casella, el XOR de les claus dels dos jugadors (canviar el color d'una peça).
+     * @return Vector de 64 claus.
+     */
+    private static long[] generaTaulaCanvis() {
+        long[] taula = new long[64];
+        for (int c = 0; c < 64; c++) taula[c] = taulaClaus[0][c] ^ taulaClaus[1][c];
+        return taula;
+    }
+
+    /**
+     * Funció que desplaça un bitboard en una de les 8 direccions, descartant el que surt del tauler.
+     * @param b Bitboard.
+     * @param d Índex de desplaçament (0..3).
+     * @param esq Cert per desplaçar cap als bits alts, fals cap als baixos.
+     * @return Bitboard desplaçat.
+     */
+    private static long desplaca(long b, int d, boolean esq) {
+        return esq ? (b << DESPLACAMENTS[d]) & MASC_ESQ[d] : (b >>> DESPLACAMENTS[d]) & MASC_DRE[d];
+    }
+
+    /**
+     * Funció que genera la màscara de moviments legals.
+     * @param propies Bitboard del jugador que tira.
+     * @param contraries Bitboard del contrari.
+     * @return Bitboard amb un bit per cada moviment legal.
+     */
+    public static long generaMoviments(long propies, long contraries) {
+
+        long buides = ~(propies | contraries), moviments = 0;
+        for (int d = 0; d < 4; d++) {
+            for (int s = 0; s < 2; s++) {
+                boolean esq = (s == 0);
+                long x = desplaca(propies, d, esq) & contraries;
+                x |= desplaca(x, d, esq) & contraries;
+                x |= desplaca(x, d, esq) & contraries;
+                x |= desplaca(x, d, esq) & contraries;
+                x |= desplaca(x, d, esq) & contraries;
+                x |= desplaca(x, d, esq) & contraries;
+                moviments |= desplaca(x, d, esq) & buides;
+            }
+        }
+
+        return moviments;
+    }
+
+    /**
+     * Funció que retorna les caselles veïnes (en qualsevol de les 8 direccions) d'alguna casella del bitboard.
+     * @param b Bitboard.
+     * @return Bitboard amb les caselles veïnes.
+     */
+    public static long veines(long b) {
+
+        long v = 0;
+        for (int d = 0; d < 4; d++)
+            v |= desplaca(b, d, true) | desplaca(b, d, false);
+
+        return v;
+    }
+
+    /**
+     * Funció que calcula les peces que es giren en col·locar una peça a la casella indicada.
+     * @param propies Bitboard del jugador que tira.
+     * @param contraries Bitboard del contrari.
+     * @param casella Índex del bit on es col·loca la peça.
+     * @return Bitboard de les peces girades.
+     */
+    public static long calculaGirades(long propies, long contraries, int casella) {
+
+        long girades = 0, peca = 1L << casella;
+        for (int d = 0; d < 4; d++) {
+            for (int s = 0; s < 2; s++) {
+                boolean esq = (s == 0);
+                long linia = 0, x = desplaca(peca, d, esq);
+                while ((x & contraries) != 0) {
+                    linia |= x;
+                    x = desplaca(x, d, esq);
+                }
+                if ((x & propies) != 0) girades |= linia;
+            }
+        }
+
+        return girades;
+    }
+
+}
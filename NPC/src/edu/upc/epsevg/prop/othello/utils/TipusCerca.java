@@ -0,0 +1,15 @@
+package edu.upc.epsevg.prop.othello.utils;
+
+/**
+ * Tipus de cerca que pot fer servir MiniMaxID.
+ * @author Omar Briqa, Joaquim Hervas
+ */
+public enum TipusCerca {
+    
+    /** Poda alfa-beta amb la finestra completa a tots els fills. */
+    ALFA_BETA,
+    
+    /** Principal variation search: finestra nul·la a partir del segon fill i finestra d'aspiració a l'arrel. */
+    PVS
+    
+}